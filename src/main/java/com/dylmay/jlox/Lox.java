@@ -3,18 +3,34 @@
  */
 package com.dylmay.jlox;
 
+import com.dylmay.jlox.assets.LineMap;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.assets.TokenType;
+import com.dylmay.jlox.cache.AstCache;
 import com.dylmay.jlox.error.ErrorMessage;
 import com.dylmay.jlox.error.LoxErrorHandler;
 import com.dylmay.jlox.interpreter.Interpreter;
 import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.lexer.ParallelLexer;
+import com.dylmay.jlox.lexer.TokenBuffer;
+import com.dylmay.jlox.optimizer.CallInliner;
+import com.dylmay.jlox.optimizer.ConstantFolder;
+import com.dylmay.jlox.optimizer.DeadCodeEliminator;
+import com.dylmay.jlox.optimizer.LoopInvariantHoister;
+import com.dylmay.jlox.parser.ParallelParser;
 import com.dylmay.jlox.parser.Parser;
 import com.dylmay.jlox.resolver.Resolver;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
 
 public class Lox {
   private static final LoxErrorHandler ERR_HNDLR = LoxErrorHandler.getInstance("LoxMain");
@@ -28,18 +44,34 @@ public class Lox {
   private static final int RESOLVER_FAIL_EXIT = 69;
   private static final int INTERPRET_FAIL_EXIT = 70;
 
+  private static boolean parallel = false;
+  private static boolean foldConstants = true;
+  private static boolean useCache = false;
+  private static boolean lazyBodies = false;
+  private static boolean pruneDeadCode = true;
+  private static boolean hoistInvariants = true;
+  private static boolean inlineCalls = true;
+  private static boolean verbose = false;
+
   private Lox() {}
 
   public static void main(String[] args) {
-    switch (args.length) {
-      case 0 -> Lox.runPrompt();
-      case 1 -> Lox.runFile(args[0]);
-      default -> {
-        Lox.outputLine("Usage: jlox [script]");
-        Lox.exit(HELP_EXIT);
+    var scripts = new ArrayList<String>();
+
+    for (var arg : args) {
+      if (!arg.startsWith("--")) {
+        scripts.add(arg);
+      } else if (!Lox.setOption(arg.substring(2))) {
+        Lox.printUsage();
       }
     }
 
+    switch (scripts.size()) {
+      case 0 -> Lox.runPrompt();
+      case 1 -> Lox.runFile(scripts.get(0));
+      default -> Lox.printUsage();
+    }
+
     if (ERR_HNDLR.hasError()) {
       exit(EXC_EXIT);
     } else if (LoxErrorHandler.getInstance(Lexer.class).hasError()) {
@@ -55,12 +87,82 @@ public class Lox {
     }
   }
 
+  private static boolean setOption(String option) {
+    switch (option) {
+      case "parallel" -> Lox.parallel = true;
+      case "no-fold" -> Lox.foldConstants = false;
+      case "cache" -> Lox.useCache = true;
+      case "no-cache" -> Lox.useCache = false;
+      case "lazy" -> Lox.lazyBodies = true;
+      case "no-prune" -> Lox.pruneDeadCode = false;
+      case "no-hoist" -> Lox.hoistInvariants = false;
+      case "no-inline" -> Lox.inlineCalls = false;
+      case "verbose" -> Lox.verbose = true;
+      default -> {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static void printUsage() {
+    Lox.outputLine(
+        "Usage: jlox [--parallel] [--no-fold] [--cache] [--lazy] [--no-inline] [--no-prune]"
+            + " [--no-hoist] [--verbose] [script]\n"
+            + "  --cache keeps each script's compiled tree in ~/.cache/jlox, or in the directory"
+            + " named by -Djlox.cache, and reuses it while the script is unchanged");
+    Lox.exit(HELP_EXIT);
+  }
+
   public static void runFile(String path) {
-    try {
-      byte[] bytes = Files.readAllBytes(Paths.get(path));
-      runLox(new String(bytes, Charset.defaultCharset()));
+    var script = Paths.get(path);
+
+    try (var channel = FileChannel.open(script, StandardOpenOption.READ)) {
+      // positions are ints, so anything past them couldn't be lexed or given a line
+      if (channel.size() > Integer.MAX_VALUE) {
+        ERR_HNDLR.report(
+            new ErrorMessage()
+                .where(path)
+                .message("Script is too large to run, the limit is 2 GB"));
+        return;
+      }
 
-    } catch (IOException exc) {
+      var mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      if (!useCache) {
+        runLox(parse(scan(mapped)));
+        return;
+      }
+
+      var variant =
+          (foldConstants ? "folded" : "unfolded")
+              + (pruneDeadCode ? "-pruned" : "")
+              + (hoistInvariants ? "-hoisted" : "")
+              + (inlineCalls ? "-inlined" : "");
+      var cache = new AstCache(AstCache.defaultDir(), variant);
+      var key = cache.key(mapped);
+      var length = mapped.remaining();
+      // a cached tree was already pruned, so it would have nothing to report
+      var stmts = verbose ? null : cache.load(key, length);
+
+      if (stmts == null) {
+        var tokens = scan(mapped);
+        stmts = compile(parse(tokens));
+
+        if (stmts == null) return;
+
+        var lines = LineMap.find(tokens.position(tokens.size() - 1));
+
+        // lazy bodies aren't parsed yet, so the tree isn't complete enough to store
+        if (lines != null && !lazyBodies) {
+          cache.store(key, length, lines, stmts);
+        }
+      }
+
+      INTERPRETER.interpret(stmts);
+
+    } catch (IOException | UncheckedIOException exc) {
       ERR_HNDLR.report(
           new ErrorMessage()
               .message("Exception occurred when reading file. Exiting.")
@@ -68,19 +170,83 @@ public class Lox {
     }
   }
 
+  private static TokenBuffer scan(ByteBuffer src) {
+    return parallel ? ParallelLexer.scan(src) : new Lexer(src).scanPacked();
+  }
+
+  private static List<Stmt> parse(TokenBuffer tokens) {
+    if (lazyBodies) return new Parser(tokens, true).parse();
+
+    return parallel ? ParallelParser.parse(tokens) : new Parser(tokens).parse();
+  }
+
+  /**
+   * Runs one REPL entry. Only a function or class can keep the entry's tree, and with it its
+   * positions, alive once it has run, so an entry declaring neither gives its positions back.
+   */
   private static void runLox(String src) {
-    var tokens = new Lexer(src).scanTokens();
-    if (LoxErrorHandler.getInstance(Lexer.class).hasError()) return;
+    var lexer = new Lexer(src);
+    var tokens = lexer.scanPacked();
+
+    runLox(new Parser(tokens).parse());
+
+    if (!Lox.declaresCode(tokens)) {
+      lexer.lineMap().release();
+    }
+  }
 
-    var expr = new Parser(tokens).parse();
-    if (LoxErrorHandler.getInstance(Parser.class).hasError()) return;
+  private static boolean declaresCode(TokenBuffer tokens) {
+    for (int i = 0; i < tokens.size(); i++) {
+      if (tokens.type(i) == TokenType.FN || tokens.type(i) == TokenType.CLASS) return true;
+    }
 
-    var resolver = new Resolver(INTERPRETER);
+    return false;
+  }
+
+  private static void runLox(List<Stmt> expr) {
+    var stmts = compile(expr);
+
+    if (stmts != null) {
+      INTERPRETER.interpret(stmts);
+    }
+  }
+
+  /**
+   * Inlines calls in, folds, hoists loop invariants from, resolves and prunes parsed statements, or
+   * returns null if any stage reported an error.
+   */
+  private static @Nullable List<Stmt> compile(List<Stmt> expr) {
+    if (LoxErrorHandler.getInstance(Lexer.class).hasError()) return null;
+    if (LoxErrorHandler.getInstance(Parser.class).hasError()) return null;
+
+    if (inlineCalls) {
+      expr = new CallInliner().inline(expr);
+    }
+
+    if (foldConstants) {
+      expr = new ConstantFolder().fold(expr);
+    }
+
+    if (hoistInvariants) {
+      expr = new LoopInvariantHoister().hoist(expr);
+    }
+
+    var resolver = new Resolver();
     resolver.resolve(expr);
 
-    if (LoxErrorHandler.getInstance(Resolver.class).hasError()) return;
+    if (LoxErrorHandler.getInstance(Resolver.class).hasError()) return null;
+
+    if (pruneDeadCode) {
+      var eliminator =
+          verbose ? new DeadCodeEliminator(Lox::reportRemoved) : new DeadCodeEliminator();
+      expr = eliminator.prune(expr);
+    }
+
+    return expr;
+  }
 
-    INTERPRETER.interpret(expr);
+  private static void reportRemoved(int position, String description) {
+    System.err.println(LineMap.resolve(position) + " Removed " + description + ".");
   }
 
   public static void runPrompt() {
@@ -4,6 +4,23 @@ import java.util.List;
 import javax.annotation.Nullable;
 
 public abstract class Expr {
+  public static final int BINARY = 0;
+  public static final int TERNARY = 1;
+  public static final int CALL = 2;
+  public static final int GROUPING = 3;
+  public static final int LITERAL = 4;
+  public static final int UNARY = 5;
+  public static final int THIS = 6;
+  public static final int VARIABLE = 7;
+  public static final int ASSIGN = 8;
+  public static final int COMPOUND_ASSIGN = 9;
+  public static final int LOGICAL = 10;
+  public static final int FN = 11;
+  public static final int GET = 12;
+  public static final int SET = 13;
+  public static final int COMPOUND_SET = 14;
+  public static final int KIND_COUNT = 15;
+
   public interface Visitor<R> {
     R visitBinaryExpr(Binary expr);
 
@@ -24,6 +41,8 @@ public abstract class Expr {
 
     R visitAssignExpr(Assign expr);
 
+    R visitCompoundAssignExpr(CompoundAssign expr);
+
     R visitLogicalExpr(Logical expr);
 
     R visitFnExpr(Fn expr);
@@ -31,6 +50,15 @@ public abstract class Expr {
     R visitGetExpr(Get expr);
 
     R visitSetExpr(Set expr);
+
+    R visitCompoundSetExpr(CompoundSet expr);
+  }
+
+  /** Dense id of the subclass, for dispatching with a switch instead of a visitor. */
+  public final int kind;
+
+  protected Expr(int kind) {
+    this.kind = kind;
   }
 
   public abstract <R> R accept(Visitor<R> visitor);
@@ -41,6 +69,7 @@ public abstract class Expr {
     public final Expr right;
 
     public Binary(Expr left, Token operator, Expr right) {
+      super(BINARY);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -86,6 +115,7 @@ public abstract class Expr {
     public final Expr onFalse;
 
     public Ternary(Expr condition, Expr onTrue, Expr onFalse) {
+      super(TERNARY);
       this.condition = condition;
       this.onTrue = onTrue;
       this.onFalse = onFalse;
@@ -131,6 +161,7 @@ public abstract class Expr {
     public final List<Expr> args;
 
     public Call(Expr callee, Token paren, List<Expr> args) {
+      super(CALL);
       this.callee = callee;
       this.paren = paren;
       this.args = args;
@@ -174,6 +205,7 @@ public abstract class Expr {
     public final Expr expression;
 
     public Grouping(Expr expression) {
+      super(GROUPING);
       this.expression = expression;
     }
 
@@ -206,9 +238,10 @@ public abstract class Expr {
 
   public static class Literal extends Expr {
     public final @Nullable Object value;
-    public final Position pos;
+    public final int pos;
 
-    public Literal(@Nullable Object value, Position pos) {
+    public Literal(@Nullable Object value, int pos) {
+      super(LITERAL);
       this.value = value;
       this.pos = pos;
     }
@@ -223,10 +256,7 @@ public abstract class Expr {
       if (this == obj) return true;
 
       if (obj instanceof Literal i) {
-        return this.value != null
-            && this.value.equals(i.value)
-            && this.pos != null
-            && this.pos.equals(i.pos);
+        return this.value != null && this.value.equals(i.value) && this.pos == i.pos;
       }
 
       return false;
@@ -238,7 +268,6 @@ public abstract class Expr {
       int result = 1;
 
       result = prime * result + ((value == null) ? 0 : value.hashCode());
-      result = prime * result + ((pos == null) ? 0 : pos.hashCode());
 
       return result;
     }
@@ -249,6 +278,7 @@ public abstract class Expr {
     public final Expr right;
 
     public Unary(Token operator, Expr right) {
+      super(UNARY);
       this.operator = operator;
       this.right = right;
     }
@@ -286,8 +316,11 @@ public abstract class Expr {
 
   public static class This extends Expr {
     public final Token keyword;
+    public int depth = -1;
+    public int slot = -1;
 
     public This(Token keyword) {
+      super(THIS);
       this.keyword = keyword;
     }
 
@@ -320,8 +353,11 @@ public abstract class Expr {
 
   public static class Variable extends Expr {
     public final Token name;
+    public int depth = -1;
+    public int slot = -1;
 
     public Variable(Token name) {
+      super(VARIABLE);
       this.name = name;
     }
 
@@ -355,8 +391,11 @@ public abstract class Expr {
   public static class Assign extends Expr {
     public final Token name;
     public final Expr value;
+    public int depth = -1;
+    public int slot = -1;
 
     public Assign(Token name, Expr value) {
+      super(ASSIGN);
       this.name = name;
       this.value = value;
     }
@@ -392,12 +431,61 @@ public abstract class Expr {
     }
   }
 
+  public static class CompoundAssign extends Expr {
+    public final Token name;
+    public final Token operator;
+    public final Expr value;
+    public int depth = -1;
+    public int slot = -1;
+
+    public CompoundAssign(Token name, Token operator, Expr value) {
+      super(COMPOUND_ASSIGN);
+      this.name = name;
+      this.operator = operator;
+      this.value = value;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCompoundAssignExpr(this);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) return true;
+
+      if (obj instanceof CompoundAssign i) {
+        return this.name != null
+            && this.name.equals(i.name)
+            && this.operator != null
+            && this.operator.equals(i.operator)
+            && this.value != null
+            && this.value.equals(i.value);
+      }
+
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+
+      result = prime * result + ((name == null) ? 0 : name.hashCode());
+      result = prime * result + ((operator == null) ? 0 : operator.hashCode());
+      result = prime * result + ((value == null) ? 0 : value.hashCode());
+
+      return result;
+    }
+  }
+
   public static class Logical extends Expr {
     public final Expr left;
     public final Token operator;
     public final Expr right;
 
     public Logical(Expr left, Token operator, Expr right) {
+      super(LOGICAL);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -438,11 +526,13 @@ public abstract class Expr {
   }
 
   public static class Fn extends Expr {
-    public final Position pos;
+    public final int pos;
     public final List<Token> parms;
     public final List<Stmt> body;
+    public int slots = 0;
 
-    public Fn(Position pos, List<Token> parms, List<Stmt> body) {
+    public Fn(int pos, List<Token> parms, List<Stmt> body) {
+      super(FN);
       this.pos = pos;
       this.parms = parms;
       this.body = body;
@@ -458,8 +548,7 @@ public abstract class Expr {
       if (this == obj) return true;
 
       if (obj instanceof Fn i) {
-        return this.pos != null
-            && this.pos.equals(i.pos)
+        return this.pos == i.pos
             && this.parms != null
             && this.parms.equals(i.parms)
             && this.body != null
@@ -474,7 +563,6 @@ public abstract class Expr {
       final int prime = 31;
       int result = 1;
 
-      result = prime * result + ((pos == null) ? 0 : pos.hashCode());
       result = prime * result + ((parms == null) ? 0 : parms.hashCode());
       result = prime * result + ((body == null) ? 0 : body.hashCode());
 
@@ -487,6 +575,7 @@ public abstract class Expr {
     public final Token name;
 
     public Get(Expr object, Token name) {
+      super(GET);
       this.object = object;
       this.name = name;
     }
@@ -528,6 +617,7 @@ public abstract class Expr {
     public final Expr value;
 
     public Set(Expr object, Token name, Expr value) {
+      super(SET);
       this.object = object;
       this.name = name;
       this.value = value;
@@ -566,4 +656,55 @@ public abstract class Expr {
       return result;
     }
   }
+
+  public static class CompoundSet extends Expr {
+    public final Expr object;
+    public final Token name;
+    public final Token operator;
+    public final Expr value;
+
+    public CompoundSet(Expr object, Token name, Token operator, Expr value) {
+      super(COMPOUND_SET);
+      this.object = object;
+      this.name = name;
+      this.operator = operator;
+      this.value = value;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCompoundSetExpr(this);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) return true;
+
+      if (obj instanceof CompoundSet i) {
+        return this.object != null
+            && this.object.equals(i.object)
+            && this.name != null
+            && this.name.equals(i.name)
+            && this.operator != null
+            && this.operator.equals(i.operator)
+            && this.value != null
+            && this.value.equals(i.value);
+      }
+
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+
+      result = prime * result + ((object == null) ? 0 : object.hashCode());
+      result = prime * result + ((name == null) ? 0 : name.hashCode());
+      result = prime * result + ((operator == null) ? 0 : operator.hashCode());
+      result = prime * result + ((value == null) ? 0 : value.hashCode());
+
+      return result;
+    }
+  }
 }
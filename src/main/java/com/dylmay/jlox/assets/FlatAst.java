@@ -0,0 +1,726 @@
+package com.dylmay.jlox.assets;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A statement list packed into int arenas instead of node objects. Each node is its kind followed
+ * by its operands in {@link #nodes}, children before their parents; lists are a count followed by
+ * the node indexes. Kinds are the statement kinds, then the expression kinds offset past them.
+ * Tokens are four ints in their own arena: type, lexeme, literal and position. Lexemes index the
+ * name table and literals the constant table, where -1 stands for nil.
+ *
+ * <p>Positions are kept as offsets from a base so the same arrays can be moved onto another
+ * {@link LineMap} with {@link #withBase}.
+ */
+public final class FlatAst {
+  public static final int EXPRESSION = Stmt.EXPRESSION;
+  public static final int VAR = Stmt.VAR;
+  public static final int BLOCK = Stmt.BLOCK;
+  public static final int IF = Stmt.IF;
+  public static final int RETURN = Stmt.RETURN;
+  public static final int WHILE = Stmt.WHILE;
+  public static final int FOR = Stmt.FOR;
+  public static final int BREAK = Stmt.BREAK;
+  public static final int CONTINUE = Stmt.CONTINUE;
+  public static final int CLASS = Stmt.CLASS;
+  public static final int BINARY = Stmt.KIND_COUNT + Expr.BINARY;
+  public static final int TERNARY = Stmt.KIND_COUNT + Expr.TERNARY;
+  public static final int CALL = Stmt.KIND_COUNT + Expr.CALL;
+  public static final int GROUPING = Stmt.KIND_COUNT + Expr.GROUPING;
+  public static final int LITERAL = Stmt.KIND_COUNT + Expr.LITERAL;
+  public static final int UNARY = Stmt.KIND_COUNT + Expr.UNARY;
+  public static final int THIS = Stmt.KIND_COUNT + Expr.THIS;
+  public static final int VARIABLE = Stmt.KIND_COUNT + Expr.VARIABLE;
+  public static final int ASSIGN = Stmt.KIND_COUNT + Expr.ASSIGN;
+  public static final int COMPOUND_ASSIGN = Stmt.KIND_COUNT + Expr.COMPOUND_ASSIGN;
+  public static final int LOGICAL = Stmt.KIND_COUNT + Expr.LOGICAL;
+  public static final int FN = Stmt.KIND_COUNT + Expr.FN;
+  public static final int GET = Stmt.KIND_COUNT + Expr.GET;
+  public static final int SET = Stmt.KIND_COUNT + Expr.SET;
+  public static final int COMPOUND_SET = Stmt.KIND_COUNT + Expr.COMPOUND_SET;
+  public static final int LIST = Stmt.KIND_COUNT + Expr.KIND_COUNT;
+
+  public static final int NONE = -1;
+
+  private static final int TOKEN_SIZE = 4;
+  private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+  private static final byte NUMBER_CONSTANT = 0;
+  private static final byte STRING_CONSTANT = 1;
+  private static final byte TRUE_CONSTANT = 2;
+  private static final byte FALSE_CONSTANT = 3;
+
+  private final int[] nodes;
+  private final int[] tokens;
+  private final String[] names;
+  private final Object[] constants;
+  private final int root;
+  private final int base;
+
+  private FlatAst(
+      int[] nodes, int[] tokens, String[] names, Object[] constants, int root, int base) {
+    this.nodes = nodes;
+    this.tokens = tokens;
+    this.names = names;
+    this.constants = constants;
+    this.root = root;
+    this.base = base;
+  }
+
+  /** Packs the statements, storing positions as offsets from the base of their source. */
+  public static FlatAst encode(List<Stmt> stmts, int base) {
+    var encoder = new Encoder(base);
+    var root = encoder.list(stmts);
+
+    return new FlatAst(
+        Arrays.copyOf(encoder.nodes, encoder.nodeCount),
+        Arrays.copyOf(encoder.tokens, encoder.tokenCount),
+        encoder.names.toArray(new String[0]),
+        encoder.constants.toArray(),
+        root,
+        base);
+  }
+
+  /** The same tree with its positions counted from another base. */
+  public FlatAst withBase(int base) {
+    return new FlatAst(this.nodes, this.tokens, this.names, this.constants, this.root, base);
+  }
+
+  /** The {@link #LIST} node holding the top-level statements. */
+  public int root() {
+    return this.root;
+  }
+
+  public int kind(int node) {
+    return this.nodes[node];
+  }
+
+  /** The operand at the index, a node, token, count, depth, slot or flag depending on the kind. */
+  public int operand(int node, int index) {
+    return this.nodes[node + 1 + index];
+  }
+
+  public TokenType tokenType(int token) {
+    return TOKEN_TYPES[this.tokens[token]];
+  }
+
+  public String lexeme(int token) {
+    return this.names[this.tokens[token + 1]];
+  }
+
+  public @Nullable Object literal(int token) {
+    return this.constant(this.tokens[token + 2]);
+  }
+
+  public int position(int token) {
+    return this.absolute(this.tokens[token + 3]);
+  }
+
+  public @Nullable Object constant(int index) {
+    return index != NONE ? this.constants[index] : null;
+  }
+
+  /** The position of an offset operand, such as that of a {@link #LITERAL} or {@link #FN}. */
+  public int absolute(int offset) {
+    return offset != NONE ? this.base + offset : Position.NO_POSITION;
+  }
+
+  /** Rebuilds the statements as node objects, with the depths and slots they were packed with. */
+  public List<Stmt> decode() {
+    return new Decoder().stmts(this.root);
+  }
+
+  /** The arrays and tables as bytes, leaving out the base. */
+  public ByteBuffer toBytes() {
+    var strings = new byte[this.names.length + this.constants.length][];
+    var size = Integer.BYTES * (5 + this.nodes.length + this.tokens.length);
+
+    for (int i = 0; i < this.names.length; i++) {
+      strings[i] = this.names[i].getBytes(StandardCharsets.UTF_8);
+      size += Integer.BYTES + strings[i].length;
+    }
+
+    for (int i = 0; i < this.constants.length; i++) {
+      size += Byte.BYTES;
+
+      if (this.constants[i] instanceof String string) {
+        strings[this.names.length + i] = string.getBytes(StandardCharsets.UTF_8);
+        size += Integer.BYTES + strings[this.names.length + i].length;
+      } else if (this.constants[i] instanceof Double) {
+        size += Double.BYTES;
+      }
+    }
+
+    var out = ByteBuffer.allocate(size);
+    out.putInt(this.root).putInt(this.nodes.length).putInt(this.tokens.length);
+    out.asIntBuffer().put(this.nodes).put(this.tokens);
+    out.position(out.position() + Integer.BYTES * (this.nodes.length + this.tokens.length));
+    out.putInt(this.names.length);
+
+    for (int i = 0; i < this.names.length; i++) {
+      out.putInt(strings[i].length).put(strings[i]);
+    }
+
+    out.putInt(this.constants.length);
+
+    for (int i = 0; i < this.constants.length; i++) {
+      var constant = this.constants[i];
+
+      if (constant instanceof Double number) {
+        out.put(NUMBER_CONSTANT).putDouble(number);
+      } else if (constant instanceof Boolean bool) {
+        out.put(bool ? TRUE_CONSTANT : FALSE_CONSTANT);
+      } else {
+        var bytes = strings[this.names.length + i];
+        out.put(STRING_CONSTANT).putInt(bytes.length).put(bytes);
+      }
+    }
+
+    return out.flip();
+  }
+
+  /** Reads arrays written by {@link #toBytes}. Malformed input fails with a RuntimeException. */
+  public static FlatAst fromBytes(ByteBuffer in, int base) {
+    var root = in.getInt();
+    var nodes = new int[in.getInt()];
+    var tokens = new int[in.getInt()];
+
+    in.asIntBuffer().get(nodes).get(tokens);
+    in.position(in.position() + Integer.BYTES * (nodes.length + tokens.length));
+
+    var names = new String[in.getInt()];
+
+    for (int i = 0; i < names.length; i++) {
+      names[i] = readString(in);
+    }
+
+    var constants = new Object[in.getInt()];
+
+    for (int i = 0; i < constants.length; i++) {
+      var tag = in.get();
+
+      constants[i] =
+          switch (tag) {
+            case NUMBER_CONSTANT -> in.getDouble();
+            case STRING_CONSTANT -> readString(in);
+            case TRUE_CONSTANT -> true;
+            case FALSE_CONSTANT -> false;
+            default -> throw new IllegalStateException("Unknown constant tag " + tag);
+          };
+    }
+
+    return new FlatAst(nodes, tokens, names, constants, root, base);
+  }
+
+  private static String readString(ByteBuffer in) {
+    var bytes = new byte[in.getInt()];
+    in.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static final class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    private final int base;
+    private final Map<String, Integer> nameIds;
+    private final List<String> names;
+    private final Map<Object, Integer> constantIds;
+    private final List<Object> constants;
+
+    private int[] nodes;
+    private int nodeCount;
+    private int[] tokens;
+    private int tokenCount;
+
+    Encoder(int base) {
+      this.base = base;
+      this.nameIds = new HashMap<>();
+      this.names = new ArrayList<>();
+      this.constantIds = new HashMap<>();
+      this.constants = new ArrayList<>();
+      this.nodes = new int[256];
+      this.nodeCount = 0;
+      this.tokens = new int[256];
+      this.tokenCount = 0;
+    }
+
+    int list(List<? extends Stmt> stmts) {
+      var operands = new int[stmts.size() + 1];
+      operands[0] = stmts.size();
+
+      for (int i = 0; i < stmts.size(); i++) {
+        operands[i + 1] = this.node(stmts.get(i));
+      }
+
+      return this.add(LIST, operands);
+    }
+
+    private int exprs(List<Expr> exprs) {
+      var operands = new int[exprs.size() + 1];
+      operands[0] = exprs.size();
+
+      for (int i = 0; i < exprs.size(); i++) {
+        operands[i + 1] = this.node(exprs.get(i));
+      }
+
+      return this.add(LIST, operands);
+    }
+
+    private int node(@Nullable Stmt stmt) {
+      return stmt != null ? stmt.accept(this) : NONE;
+    }
+
+    private int node(@Nullable Expr expr) {
+      return expr != null ? expr.accept(this) : NONE;
+    }
+
+    private int add(int kind, int... operands) {
+      if (this.nodeCount + operands.length + 1 > this.nodes.length) {
+        var capacity = Math.max(this.nodes.length * 2, this.nodeCount + operands.length + 1);
+        this.nodes = Arrays.copyOf(this.nodes, capacity);
+      }
+
+      var index = this.nodeCount;
+      this.nodes[this.nodeCount++] = kind;
+      System.arraycopy(operands, 0, this.nodes, this.nodeCount, operands.length);
+      this.nodeCount += operands.length;
+
+      return index;
+    }
+
+    private int token(Token token) {
+      if (this.tokenCount + TOKEN_SIZE > this.tokens.length) {
+        this.tokens = Arrays.copyOf(this.tokens, this.tokens.length * 2);
+      }
+
+      var index = this.tokenCount;
+      this.tokens[index] = token.type().ordinal();
+      this.tokens[index + 1] = this.name(token.lexeme());
+      this.tokens[index + 2] = this.constant(token.literal());
+      this.tokens[index + 3] = this.offset(token.position());
+      this.tokenCount += TOKEN_SIZE;
+
+      return index;
+    }
+
+    private int name(String name) {
+      return this.nameIds.computeIfAbsent(
+          name,
+          key -> {
+            this.names.add(key);
+            return this.names.size() - 1;
+          });
+    }
+
+    private int constant(@Nullable Object value) {
+      if (value == null) return NONE;
+
+      return this.constantIds.computeIfAbsent(
+          value,
+          key -> {
+            this.constants.add(key);
+            return this.constants.size() - 1;
+          });
+    }
+
+    private int offset(int position) {
+      return position >= this.base ? position - this.base : NONE;
+    }
+
+    private static int flag(boolean value) {
+      return value ? 1 : 0;
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+      return this.add(EXPRESSION, this.node(stmt.expr));
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+      var name = this.token(stmt.name);
+      var initializer = this.node(stmt.initializer);
+
+      return this.add(
+          VAR, name, initializer, flag(stmt.mutable), flag(stmt.isStatic), stmt.slot);
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+      return this.add(BLOCK, this.list(stmt.stmts), stmt.slots);
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+      var condition = this.node(stmt.condition);
+      var thenBranch = this.node(stmt.thenBranch);
+
+      return this.add(IF, condition, thenBranch, this.node(stmt.elseBranch));
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+      var keyword = this.token(stmt.keyword);
+
+      return this.add(RETURN, keyword, this.node(stmt.value));
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+      var condition = this.node(stmt.condition);
+
+      return this.add(WHILE, condition, this.node(stmt.body));
+    }
+
+    @Override
+    public Integer visitForStmt(Stmt.For stmt) {
+      var initializer = this.node(stmt.initializer);
+      var condition = this.node(stmt.condition);
+      var increment = this.node(stmt.increment);
+      var body = this.list(stmt.body);
+
+      return this.add(
+          FOR,
+          initializer,
+          condition,
+          increment,
+          body,
+          flag(stmt.bodyScoped),
+          stmt.slots,
+          stmt.bodySlots);
+    }
+
+    @Override
+    public Integer visitBreakStmt(Stmt.Break stmt) {
+      return this.add(BREAK, this.token(stmt.keyword));
+    }
+
+    @Override
+    public Integer visitContinueStmt(Stmt.Continue stmt) {
+      return this.add(CONTINUE, this.token(stmt.keyword));
+    }
+
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+      var name = this.token(stmt.name);
+      var decls = this.list(stmt.decls);
+
+      return this.add(CLASS, name, decls, this.node(stmt.superclass), stmt.slot);
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+      var left = this.node(expr.left);
+      var operator = this.token(expr.operator);
+
+      return this.add(BINARY, left, operator, this.node(expr.right));
+    }
+
+    @Override
+    public Integer visitTernaryExpr(Expr.Ternary expr) {
+      var condition = this.node(expr.condition);
+      var onTrue = this.node(expr.onTrue);
+
+      return this.add(TERNARY, condition, onTrue, this.node(expr.onFalse));
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+      var callee = this.node(expr.callee);
+      var paren = this.token(expr.paren);
+
+      return this.add(CALL, callee, paren, this.exprs(expr.args));
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+      return this.add(GROUPING, this.node(expr.expression));
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+      return this.add(LITERAL, this.constant(expr.value), this.offset(expr.pos));
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+      var operator = this.token(expr.operator);
+
+      return this.add(UNARY, operator, this.node(expr.right));
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+      return this.add(THIS, this.token(expr.keyword), expr.depth, expr.slot);
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+      return this.add(VARIABLE, this.token(expr.name), expr.depth, expr.slot);
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+      var name = this.token(expr.name);
+
+      return this.add(ASSIGN, name, this.node(expr.value), expr.depth, expr.slot);
+    }
+
+    @Override
+    public Integer visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+      var name = this.token(expr.name);
+      var operator = this.token(expr.operator);
+      var value = this.node(expr.value);
+
+      return this.add(COMPOUND_ASSIGN, name, operator, value, expr.depth, expr.slot);
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+      var left = this.node(expr.left);
+      var operator = this.token(expr.operator);
+
+      return this.add(LOGICAL, left, operator, this.node(expr.right));
+    }
+
+    @Override
+    public Integer visitFnExpr(Expr.Fn expr) {
+      var parms = new int[expr.parms.size() + 1];
+      parms[0] = expr.parms.size();
+
+      for (int i = 0; i < expr.parms.size(); i++) {
+        parms[i + 1] = this.token(expr.parms.get(i));
+      }
+
+      var body = this.list(expr.body);
+
+      return this.add(FN, this.offset(expr.pos), this.add(LIST, parms), body, expr.slots);
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+      var object = this.node(expr.object);
+
+      return this.add(GET, object, this.token(expr.name));
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+      var object = this.node(expr.object);
+      var name = this.token(expr.name);
+
+      return this.add(SET, object, name, this.node(expr.value));
+    }
+
+    @Override
+    public Integer visitCompoundSetExpr(Expr.CompoundSet expr) {
+      var object = this.node(expr.object);
+      var name = this.token(expr.name);
+      var operator = this.token(expr.operator);
+
+      return this.add(COMPOUND_SET, object, name, operator, this.node(expr.value));
+    }
+  }
+
+  private final class Decoder {
+    List<Stmt> stmts(int list) {
+      var count = FlatAst.this.operand(list, 0);
+      var stmts = new ArrayList<Stmt>(count);
+
+      for (int i = 1; i <= count; i++) {
+        stmts.add(this.stmt(FlatAst.this.operand(list, i)));
+      }
+
+      return stmts;
+    }
+
+    private List<Stmt.Var> vars(int list) {
+      var count = FlatAst.this.operand(list, 0);
+      var vars = new ArrayList<Stmt.Var>(count);
+
+      for (int i = 1; i <= count; i++) {
+        vars.add((Stmt.Var) this.stmt(FlatAst.this.operand(list, i)));
+      }
+
+      return vars;
+    }
+
+    private List<Expr> exprs(int list) {
+      var count = FlatAst.this.operand(list, 0);
+      var exprs = new ArrayList<Expr>(count);
+
+      for (int i = 1; i <= count; i++) {
+        exprs.add(this.expr(FlatAst.this.operand(list, i)));
+      }
+
+      return exprs;
+    }
+
+    private List<Token> tokens(int list) {
+      var count = FlatAst.this.operand(list, 0);
+      var tokens = new ArrayList<Token>(count);
+
+      for (int i = 1; i <= count; i++) {
+        tokens.add(this.token(FlatAst.this.operand(list, i)));
+      }
+
+      return tokens;
+    }
+
+    private Token token(int token) {
+      var ast = FlatAst.this;
+
+      return new Token(
+          ast.tokenType(token), ast.lexeme(token), ast.literal(token), ast.position(token));
+    }
+
+    private @Nullable Stmt nullableStmt(int node) {
+      return node != NONE ? this.stmt(node) : null;
+    }
+
+    private @Nullable Expr nullableExpr(int node) {
+      return node != NONE ? this.expr(node) : null;
+    }
+
+    private Stmt stmt(int node) {
+      var ast = FlatAst.this;
+      var kind = ast.kind(node);
+
+      return switch (kind) {
+        case EXPRESSION -> new Stmt.Expression(this.expr(ast.operand(node, 0)));
+        case VAR -> {
+          var stmt =
+              new Stmt.Var(
+                  this.token(ast.operand(node, 0)),
+                  this.nullableExpr(ast.operand(node, 1)),
+                  ast.operand(node, 2) != 0,
+                  ast.operand(node, 3) != 0);
+          stmt.slot = ast.operand(node, 4);
+          yield stmt;
+        }
+        case BLOCK -> {
+          var stmt = new Stmt.Block(this.stmts(ast.operand(node, 0)));
+          stmt.slots = ast.operand(node, 1);
+          yield stmt;
+        }
+        case IF -> new Stmt.If(
+            this.expr(ast.operand(node, 0)),
+            this.stmt(ast.operand(node, 1)),
+            this.nullableStmt(ast.operand(node, 2)));
+        case RETURN -> new Stmt.Return(
+            this.token(ast.operand(node, 0)), this.nullableExpr(ast.operand(node, 1)));
+        case WHILE -> new Stmt.While(
+            this.expr(ast.operand(node, 0)), this.stmt(ast.operand(node, 1)));
+        case FOR -> {
+          var stmt =
+              new Stmt.For(
+                  this.nullableStmt(ast.operand(node, 0)),
+                  this.expr(ast.operand(node, 1)),
+                  this.nullableExpr(ast.operand(node, 2)),
+                  this.stmts(ast.operand(node, 3)),
+                  ast.operand(node, 4) != 0);
+          stmt.slots = ast.operand(node, 5);
+          stmt.bodySlots = ast.operand(node, 6);
+          yield stmt;
+        }
+        case BREAK -> new Stmt.Break(this.token(ast.operand(node, 0)));
+        case CONTINUE -> new Stmt.Continue(this.token(ast.operand(node, 0)));
+        case CLASS -> {
+          var stmt =
+              new Stmt.Class(
+                  this.token(ast.operand(node, 0)),
+                  this.vars(ast.operand(node, 1)),
+                  (Expr.Variable) this.nullableExpr(ast.operand(node, 2)));
+          stmt.slot = ast.operand(node, 3);
+          yield stmt;
+        }
+        default -> throw new IllegalStateException("Not a statement kind " + kind);
+      };
+    }
+
+    private Expr expr(int node) {
+      var ast = FlatAst.this;
+      var kind = ast.kind(node);
+
+      return switch (kind) {
+        case BINARY -> new Expr.Binary(
+            this.expr(ast.operand(node, 0)),
+            this.token(ast.operand(node, 1)),
+            this.expr(ast.operand(node, 2)));
+        case TERNARY -> new Expr.Ternary(
+            this.expr(ast.operand(node, 0)),
+            this.expr(ast.operand(node, 1)),
+            this.expr(ast.operand(node, 2)));
+        case CALL -> new Expr.Call(
+            this.expr(ast.operand(node, 0)),
+            this.token(ast.operand(node, 1)),
+            this.exprs(ast.operand(node, 2)));
+        case GROUPING -> new Expr.Grouping(this.expr(ast.operand(node, 0)));
+        case LITERAL -> new Expr.Literal(
+            ast.constant(ast.operand(node, 0)), ast.absolute(ast.operand(node, 1)));
+        case UNARY -> new Expr.Unary(
+            this.token(ast.operand(node, 0)), this.expr(ast.operand(node, 1)));
+        case THIS -> {
+          var expr = new Expr.This(this.token(ast.operand(node, 0)));
+          expr.depth = ast.operand(node, 1);
+          expr.slot = ast.operand(node, 2);
+          yield expr;
+        }
+        case VARIABLE -> {
+          var expr = new Expr.Variable(this.token(ast.operand(node, 0)));
+          expr.depth = ast.operand(node, 1);
+          expr.slot = ast.operand(node, 2);
+          yield expr;
+        }
+        case ASSIGN -> {
+          var expr =
+              new Expr.Assign(this.token(ast.operand(node, 0)), this.expr(ast.operand(node, 1)));
+          expr.depth = ast.operand(node, 2);
+          expr.slot = ast.operand(node, 3);
+          yield expr;
+        }
+        case COMPOUND_ASSIGN -> {
+          var expr =
+              new Expr.CompoundAssign(
+                  this.token(ast.operand(node, 0)),
+                  this.token(ast.operand(node, 1)),
+                  this.expr(ast.operand(node, 2)));
+          expr.depth = ast.operand(node, 3);
+          expr.slot = ast.operand(node, 4);
+          yield expr;
+        }
+        case LOGICAL -> new Expr.Logical(
+            this.expr(ast.operand(node, 0)),
+            this.token(ast.operand(node, 1)),
+            this.expr(ast.operand(node, 2)));
+        case FN -> {
+          var expr =
+              new Expr.Fn(
+                  ast.absolute(ast.operand(node, 0)),
+                  this.tokens(ast.operand(node, 1)),
+                  this.stmts(ast.operand(node, 2)));
+          expr.slots = ast.operand(node, 3);
+          yield expr;
+        }
+        case GET -> new Expr.Get(
+            this.expr(ast.operand(node, 0)), this.token(ast.operand(node, 1)));
+        case SET -> new Expr.Set(
+            this.expr(ast.operand(node, 0)),
+            this.token(ast.operand(node, 1)),
+            this.expr(ast.operand(node, 2)));
+        case COMPOUND_SET -> new Expr.CompoundSet(
+            this.expr(ast.operand(node, 0)),
+            this.token(ast.operand(node, 1)),
+            this.token(ast.operand(node, 2)),
+            this.expr(ast.operand(node, 3)));
+        default -> throw new IllegalStateException("Not an expression kind " + kind);
+      };
+    }
+  }
+}
@@ -2,7 +2,7 @@ package com.dylmay.jlox.assets;
 
 import javax.annotation.Nullable;
 
-public final record Item(@Nullable Object result, Position position) {
+public final record Item(@Nullable Object result, int position) {
   public <T> @Nullable T as(Class<T> clazz) {
     return clazz.cast(this.result);
   }
@@ -0,0 +1,65 @@
+package com.dylmay.jlox.assets;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import javax.annotation.Nullable;
+
+/**
+ * A function body that is only parsed the first time it is read, normally when the function is
+ * first called. Passes that would walk the body before then, such as folding and resolution, add
+ * themselves with {@link #andThen} instead and run in order once it is parsed.
+ */
+public final class LazyBody extends AbstractList<Stmt> {
+  private @Nullable Supplier<List<Stmt>> parse;
+  private final List<UnaryOperator<List<Stmt>>> passes;
+  private @Nullable List<Stmt> stmts;
+
+  public LazyBody(Supplier<List<Stmt>> parse) {
+    this.parse = parse;
+    this.passes = new ArrayList<>();
+    this.stmts = null;
+  }
+
+  public boolean isLoaded() {
+    return this.stmts != null;
+  }
+
+  /** Runs the pass over the statements when they are parsed, or now if they already are. */
+  public void andThen(UnaryOperator<List<Stmt>> pass) {
+    if (this.stmts != null) {
+      this.stmts = pass.apply(this.stmts);
+    } else {
+      this.passes.add(pass);
+    }
+  }
+
+  @SuppressWarnings("nullness")
+  private List<Stmt> load() {
+    if (this.stmts == null) {
+      var stmts = this.parse.get();
+
+      for (var pass : this.passes) {
+        stmts = pass.apply(stmts);
+      }
+
+      this.stmts = stmts;
+      this.parse = null;
+      this.passes.clear();
+    }
+
+    return this.stmts;
+  }
+
+  @Override
+  public Stmt get(int index) {
+    return this.load().get(index);
+  }
+
+  @Override
+  public int size() {
+    return this.load().size();
+  }
+}
@@ -0,0 +1,205 @@
+package com.dylmay.jlox.assets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Line starts of a single lexed source. Tokens and AST nodes only carry an int position, which is
+ * the base of their source plus the offset within it. Turning a position back into a line and
+ * column is left until an error needs formatting.
+ *
+ * <p>Every source holds its range of positions until it is {@link #release released}, after which
+ * the range goes to the next source that fits in it. Hosts that lex many sources, such as the REPL
+ * and {@link com.dylmay.jlox.parser.Document}, release each one once nothing holds its positions.
+ */
+public final class LineMap {
+  /** The registered sources, ordered by base. */
+  private static final List<LineMap> SOURCES = new ArrayList<>();
+
+  private final int base;
+  private int limit;
+
+  private int[] lineStarts;
+  private int lineCount;
+
+  private int firstLine;
+  private int firstColumn;
+
+  private LineMap(int base, int limit) {
+    this.base = base;
+    this.limit = limit;
+    this.lineStarts = new int[16];
+    this.lineCount = 1;
+    this.firstLine = 1;
+    this.firstColumn = 0;
+  }
+
+  /**
+   * Reserves positions for a source of the given length, in the first free range it fits in. A
+   * negative length means the length isn't known yet; the source then reserves half of the largest
+   * free range until {@link #close} is called.
+   *
+   * @throws IllegalStateException if no free range is large enough
+   */
+  public static synchronized LineMap create(int length) {
+    var index = -1;
+    var gapStart = 0;
+    var gapSize = 0;
+    var start = 0;
+
+    for (int i = 0; i <= SOURCES.size(); i++) {
+      var end = i < SOURCES.size() ? SOURCES.get(i).base : Integer.MAX_VALUE;
+
+      // any earlier gap was too small, so the first one that fits is also the largest so far
+      if (end - start > gapSize) {
+        index = i;
+        gapStart = start;
+        gapSize = end - start;
+
+        if (length >= 0 && gapSize > length) break;
+      }
+
+      if (i < SOURCES.size()) {
+        start = SOURCES.get(i).limit;
+      }
+    }
+
+    var reserved = length >= 0 ? length + 1L : gapSize / 2;
+
+    if (index < 0 || reserved == 0 || reserved > gapSize) {
+      throw new IllegalStateException("No positions left for a source of length " + length);
+    }
+
+    var lines = new LineMap(gapStart, gapStart + (int) reserved);
+    SOURCES.add(index, lines);
+
+    return lines;
+  }
+
+  /** How many sources hold positions. */
+  static synchronized int registered() {
+    return SOURCES.size();
+  }
+
+  /** Finds the line and column of a position. */
+  public static Position resolve(int position) {
+    var lines = LineMap.find(position);
+
+    return lines != null ? lines.locate(position - lines.base) : new Position(-1, -1);
+  }
+
+  /** The source a position belongs to, or null if no source reserved it. */
+  public static synchronized @Nullable LineMap find(int position) {
+    if (position < 0) return null;
+
+    int low = 0;
+    int high = SOURCES.size() - 1;
+
+    while (low <= high) {
+      var mid = (low + high) >>> 1;
+      var lines = SOURCES.get(mid);
+
+      if (position < lines.base) {
+        high = mid - 1;
+      } else if (position >= lines.limit) {
+        low = mid + 1;
+      } else {
+        return lines;
+      }
+    }
+
+    return null;
+  }
+
+  /** Hands any positions reserved past the source's final length back for later sources. */
+  public void close(int length) {
+    synchronized (LineMap.class) {
+      if (this.base + length + 1 < this.limit) {
+        this.limit = this.base + length + 1;
+      }
+    }
+
+    this.lineStarts = Arrays.copyOf(this.lineStarts, this.lineCount);
+  }
+
+  /**
+   * Hands all of the source's positions back. They no longer resolve, and may later belong to
+   * another source, so this is only for sources whose tokens and trees are no longer used.
+   */
+  public void release() {
+    synchronized (LineMap.class) {
+      SOURCES.remove(this);
+    }
+  }
+
+  public int base() {
+    return this.base;
+  }
+
+  /** The offset every line starts at, beginning with the first line at offset 0. */
+  public int[] lineStarts() {
+    return Arrays.copyOf(this.lineStarts, this.lineCount);
+  }
+
+  /**
+   * An unregistered map sharing this source's base, for lexing part of the source on its own. Its
+   * lines are merged back in order with {@link #addLines}.
+   */
+  public LineMap detached() {
+    return new LineMap(this.base, this.limit);
+  }
+
+  /** Records every line of a {@link #detached} map, which must come after the lines so far. */
+  public void addLines(LineMap part) {
+    for (int i = 1; i < part.lineCount; i++) {
+      this.addLine(part.lineStarts[i]);
+    }
+  }
+
+  /** Records that a new line begins at the offset, which must be past every line so far. */
+  public void addLine(int offset) {
+    if (this.lineCount == this.lineStarts.length) {
+      this.lineStarts = Arrays.copyOf(this.lineStarts, this.lineCount * 2);
+    }
+
+    this.lineStarts[this.lineCount++] = offset;
+  }
+
+  /**
+   * Moves the start of this source to a line and column of a larger text, for sources that are
+   * one piece of it. Resolved positions are then given in terms of the larger text.
+   */
+  public void place(int line, int column) {
+    this.firstLine = line;
+    this.firstColumn = column;
+  }
+
+  /** The position of a 1-based line and 0-based column. */
+  public int at(int line, int column) {
+    return this.base + this.lineStarts[line - 1] + column;
+  }
+
+  /** The line and column of an offset into this source. */
+  public Position locate(int offset) {
+    int low = 0;
+    int high = this.lineCount - 1;
+
+    while (low < high) {
+      var mid = (low + high + 1) >>> 1;
+
+      if (this.lineStarts[mid] <= offset) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    var column = offset - this.lineStarts[low];
+
+    return low == 0
+        ? new Position(this.firstLine, this.firstColumn + column)
+        : new Position(this.firstLine + low, column);
+  }
+}
@@ -1,7 +1,7 @@
 package com.dylmay.jlox.assets;
 
 public record Position(int lineNum, int lineOffset) {
-  public static final Position NO_POSITION = new Position(-1, -1);
+  public static final int NO_POSITION = -1;
 
   @Override
   public String toString() {
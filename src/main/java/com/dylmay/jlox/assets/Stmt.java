@@ -4,6 +4,18 @@ import java.util.List;
 import javax.annotation.Nullable;
 
 public abstract class Stmt {
+  public static final int EXPRESSION = 0;
+  public static final int VAR = 1;
+  public static final int BLOCK = 2;
+  public static final int IF = 3;
+  public static final int RETURN = 4;
+  public static final int WHILE = 5;
+  public static final int FOR = 6;
+  public static final int BREAK = 7;
+  public static final int CONTINUE = 8;
+  public static final int CLASS = 9;
+  public static final int KIND_COUNT = 10;
+
   public interface Visitor<R> {
     R visitExpressionStmt(Expression stmt);
 
@@ -20,6 +32,9 @@ public abstract class Stmt {
 
     R visitWhileStmt(While stmt);
 
+    @Nullable
+    R visitForStmt(For stmt);
+
     R visitBreakStmt(Break stmt);
 
     R visitContinueStmt(Continue stmt);
@@ -28,12 +43,20 @@ public abstract class Stmt {
     R visitClassStmt(Class stmt);
   }
 
+  /** Dense id of the subclass, for dispatching with a switch instead of a visitor. */
+  public final int kind;
+
+  protected Stmt(int kind) {
+    this.kind = kind;
+  }
+
   public abstract <R> R accept(Visitor<R> visitor);
 
   public static class Expression extends Stmt {
     public final Expr expr;
 
     public Expression(Expr expr) {
+      super(EXPRESSION);
       this.expr = expr;
     }
 
@@ -69,8 +92,10 @@ public abstract class Stmt {
     public final @Nullable Expr initializer;
     public final boolean mutable;
     public final boolean isStatic;
+    public int slot = -1;
 
     public Var(Token name, @Nullable Expr initializer, boolean mutable, boolean isStatic) {
+      super(VAR);
       this.name = name;
       this.initializer = initializer;
       this.mutable = mutable;
@@ -112,8 +137,10 @@ public abstract class Stmt {
 
   public static class Block extends Stmt {
     public final List<Stmt> stmts;
+    public int slots = 0;
 
     public Block(List<Stmt> stmts) {
+      super(BLOCK);
       this.stmts = stmts;
     }
 
@@ -150,6 +177,7 @@ public abstract class Stmt {
     public final @Nullable Stmt elseBranch;
 
     public If(Expr condition, Stmt thenBranch, @Nullable Stmt elseBranch) {
+      super(IF);
       this.condition = condition;
       this.thenBranch = thenBranch;
       this.elseBranch = elseBranch;
@@ -194,6 +222,7 @@ public abstract class Stmt {
     public final @Nullable Expr value;
 
     public Return(Token keyword, @Nullable Expr value) {
+      super(RETURN);
       this.keyword = keyword;
       this.value = value;
     }
@@ -234,6 +263,7 @@ public abstract class Stmt {
     public final Stmt body;
 
     public While(Expr condition, Stmt body) {
+      super(WHILE);
       this.condition = condition;
       this.body = body;
     }
@@ -269,10 +299,72 @@ public abstract class Stmt {
     }
   }
 
+  public static class For extends Stmt {
+    public final @Nullable Stmt initializer;
+    public final Expr condition;
+    public final @Nullable Expr increment;
+    public final List<Stmt> body;
+    public final boolean bodyScoped;
+    public int slots = 0;
+    public int bodySlots = 0;
+
+    public For(
+        @Nullable Stmt initializer,
+        Expr condition,
+        @Nullable Expr increment,
+        List<Stmt> body,
+        boolean bodyScoped) {
+      super(FOR);
+      this.initializer = initializer;
+      this.condition = condition;
+      this.increment = increment;
+      this.body = body;
+      this.bodyScoped = bodyScoped;
+    }
+
+    @Override
+    public <R> @Nullable R accept(Visitor<R> visitor) {
+      return visitor.visitForStmt(this);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) return true;
+
+      if (obj instanceof For i) {
+        return this.initializer != null
+            && this.initializer.equals(i.initializer)
+            && this.condition != null
+            && this.condition.equals(i.condition)
+            && this.increment != null
+            && this.increment.equals(i.increment)
+            && this.body != null
+            && this.body.equals(i.body)
+            && this.bodyScoped == i.bodyScoped;
+      }
+
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+
+      result = prime * result + ((initializer == null) ? 0 : initializer.hashCode());
+      result = prime * result + ((condition == null) ? 0 : condition.hashCode());
+      result = prime * result + ((increment == null) ? 0 : increment.hashCode());
+      result = prime * result + ((body == null) ? 0 : body.hashCode());
+
+      return result;
+    }
+  }
+
   public static class Break extends Stmt {
     public final Token keyword;
 
     public Break(Token keyword) {
+      super(BREAK);
       this.keyword = keyword;
     }
 
@@ -307,6 +399,7 @@ public abstract class Stmt {
     public final Token keyword;
 
     public Continue(Token keyword) {
+      super(CONTINUE);
       this.keyword = keyword;
     }
 
@@ -341,8 +434,10 @@ public abstract class Stmt {
     public final Token name;
     public final List<Stmt.Var> decls;
     public final @Nullable Expr.Variable superclass;
+    public int slot = -1;
 
     public Class(Token name, List<Stmt.Var> decls, @Nullable Expr.Variable superclass) {
+      super(CLASS);
       this.name = name;
       this.decls = decls;
       this.superclass = superclass;
@@ -1,34 +1,36 @@
 package com.dylmay.jlox.assets;
 
+import javax.annotation.Nullable;
+
 public enum TokenType {
   // Single char tokens
-  LEFT_PAREN,
-  RIGHT_PAREN,
-  LEFT_BRACE,
-  RIGHT_BRACE,
-  COMMA,
-  DOT,
-  MINUS,
-  PLUS,
-  SEMICOLON,
-  SLASH,
-  STAR,
-  TERNARY,
-  COLON,
+  LEFT_PAREN("("),
+  RIGHT_PAREN(")"),
+  LEFT_BRACE("{"),
+  RIGHT_BRACE("}"),
+  COMMA(","),
+  DOT("."),
+  MINUS("-"),
+  PLUS("+"),
+  SEMICOLON(";"),
+  SLASH("/"),
+  STAR("*"),
+  TERNARY("?"),
+  COLON(":"),
 
   // Multi char tokens
-  BANG,
-  BANG_EQUAL,
-  EQUAL,
-  EQUAL_EQUAL,
-  GREATER,
-  GREATER_EQUAL,
-  LESS,
-  LESS_EQUAL,
-  PLUS_EQUAL,
-  SLASH_EQUAL,
-  MINUS_EQUAL,
-  STAR_EQUAL,
+  BANG("!"),
+  BANG_EQUAL("!="),
+  EQUAL("="),
+  EQUAL_EQUAL("=="),
+  GREATER(">"),
+  GREATER_EQUAL(">="),
+  LESS("<"),
+  LESS_EQUAL("<="),
+  PLUS_EQUAL("+="),
+  SLASH_EQUAL("/="),
+  MINUS_EQUAL("-="),
+  STAR_EQUAL("*="),
 
   // Literals
   IDENTIFIER,
@@ -36,25 +38,40 @@ public enum TokenType {
   NUMBER,
 
   // Keywords
-  AND,
-  CLASS,
-  ELSE,
-  FALSE,
-  FN,
-  FOR,
-  IF,
-  NIL,
-  OR,
-  RETURN,
-  SUPER,
-  THIS,
-  TRUE,
-  LET,
-  WHILE,
-  CONTINUE,
-  BREAK,
-  MUT,
-  STATIC,
-
-  EOF,
+  AND("and"),
+  CLASS("class"),
+  ELSE("else"),
+  FALSE("false"),
+  FN("fn"),
+  FOR("for"),
+  IF("if"),
+  NIL("nil"),
+  OR("or"),
+  RETURN("return"),
+  SUPER("super"),
+  THIS("self"),
+  TRUE("true"),
+  LET("let"),
+  WHILE("while"),
+  CONTINUE("continue"),
+  BREAK("break"),
+  MUT("mut"),
+  STATIC("static"),
+
+  EOF;
+
+  private final @Nullable String lexeme;
+
+  TokenType() {
+    this(null);
+  }
+
+  TokenType(@Nullable String lexeme) {
+    this.lexeme = lexeme;
+  }
+
+  /** The spelling shared by every token of this type, or null if it varies. */
+  public @Nullable String lexeme() {
+    return this.lexeme;
+  }
 }
@@ -0,0 +1,138 @@
+package com.dylmay.jlox.cache;
+
+import com.dylmay.jlox.assets.FlatAst;
+import com.dylmay.jlox.assets.LineMap;
+import com.dylmay.jlox.assets.Stmt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Resolved trees kept on disk, one file per source named by a hash of its contents. A file holds
+ * the line starts of the source and its statements as a {@link FlatAst}, so a hit skips the
+ * lexer, parser, folder and resolver. Only trees with no errors are stored, and the cache is best
+ * effort: a file that can't be read is treated as a miss, and one that can't be written, say
+ * under a home directory that isn't writable, is skipped.
+ *
+ * <p>Scripts are only cached when run with {@code --cache}.
+ */
+public final class AstCache {
+  private static final int MAGIC = 0x4a4c4f58;
+  private static final int VERSION = 3;
+
+  private final Path dir;
+  private final String variant;
+
+  /**
+   * A cache in the directory. Trees built with different settings, such as with folding on or off,
+   * are kept apart by the variant.
+   */
+  public AstCache(Path dir, String variant) {
+    this.dir = dir;
+    this.variant = variant;
+  }
+
+  /** The directory set by the {@code jlox.cache} property, or {@code ~/.cache/jlox}. */
+  public static Path defaultDir() {
+    var dir = System.getProperty("jlox.cache");
+
+    if (dir != null) return Paths.get(dir);
+
+    return Paths.get(System.getProperty("user.home"), ".cache", "jlox");
+  }
+
+  /** The name a source is stored under, a hash of its contents and the variant. */
+  public String key(ByteBuffer source) {
+    MessageDigest digest;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException exc) {
+      throw new IllegalStateException(exc);
+    }
+
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(VERSION).flip());
+    digest.update(this.variant.getBytes(StandardCharsets.UTF_8));
+    digest.update(source.duplicate());
+
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * The statements stored under the key for a source of the given length, placed in a new {@link
+   * LineMap}, or null on a miss.
+   */
+  public @Nullable List<Stmt> load(String key, int length) {
+    var file = this.dir.resolve(key + ".ast");
+
+    if (!Files.isRegularFile(file)) return null;
+
+    try {
+      var in = ByteBuffer.wrap(Files.readAllBytes(file));
+
+      if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+
+      if (in.getInt() != length) return null;
+
+      var lines = LineMap.create(length);
+      var lineCount = in.getInt();
+
+      for (int i = 1; i < lineCount; i++) {
+        lines.addLine(in.getInt());
+      }
+
+      var ast = FlatAst.fromBytes(in, lines.base());
+
+      return in.hasRemaining() ? null : ast.decode();
+    } catch (IOException | RuntimeException exc) {
+      return null;
+    }
+  }
+
+  /** Stores the resolved statements of a source of the given length, lexed into the lines. */
+  public void store(String key, int length, LineMap lines, List<Stmt> stmts) {
+    var body = FlatAst.encode(stmts, lines.base()).toBytes();
+    var lineStarts = lines.lineStarts();
+    var header = ByteBuffer.allocate(Integer.BYTES * (3 + lineStarts.length));
+
+    header.putInt(MAGIC).putInt(VERSION).putInt(length).putInt(lineStarts.length);
+
+    for (int i = 1; i < lineStarts.length; i++) {
+      header.putInt(lineStarts[i]);
+    }
+
+    header.flip();
+
+    @Nullable Path temp = null;
+
+    try {
+      Files.createDirectories(this.dir);
+      temp = Files.createTempFile(this.dir, key, ".tmp");
+
+      try (var channel = Files.newByteChannel(temp, StandardOpenOption.WRITE)) {
+        while (header.hasRemaining() || body.hasRemaining()) {
+          channel.write(header.hasRemaining() ? header : body);
+        }
+      }
+
+      Files.move(
+          temp,
+          this.dir.resolve(key + ".ast"),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException | RuntimeException exc) {
+      // a source that can't be cached is just compiled again next time
+      if (temp != null) temp.toFile().delete();
+    }
+  }
+}
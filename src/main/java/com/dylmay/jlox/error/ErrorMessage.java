@@ -1,18 +1,19 @@
 package com.dylmay.jlox.error;
 
+import com.dylmay.jlox.assets.LineMap;
 import com.dylmay.jlox.assets.Position;
 import javax.annotation.Nullable;
 
 public class ErrorMessage {
   private @Nullable String message;
   private @Nullable String where;
-  private @Nullable Position position;
+  private int position;
   private @Nullable Exception exception;
 
   public ErrorMessage() {
     this.message = null;
     this.where = null;
-    this.position = null;
+    this.position = Position.NO_POSITION;
     this.exception = null;
   }
 
@@ -28,7 +29,7 @@ public class ErrorMessage {
     return this;
   }
 
-  public ErrorMessage position(Position position) {
+  public ErrorMessage position(int position) {
     this.position = position;
 
     return this;
@@ -40,11 +41,15 @@ public class ErrorMessage {
     return this;
   }
 
+  public int position() {
+    return this.position;
+  }
+
   public String format() {
     StringBuilder formattedString = new StringBuilder();
 
-    if (position != null) {
-      formattedString.append(position);
+    if (position != Position.NO_POSITION) {
+      formattedString.append(LineMap.resolve(position));
     }
 
     if (where != null) {
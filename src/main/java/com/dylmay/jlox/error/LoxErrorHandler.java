@@ -1,9 +1,12 @@
 package com.dylmay.jlox.error;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 public class LoxErrorHandler {
   private static final HashMap<String, LoxErrorHandler> handlers = new HashMap<>();
+  private static final ThreadLocal<Deferred> deferred = new ThreadLocal<>();
 
   private boolean hasError;
   public final String instanceName;
@@ -36,8 +39,71 @@ public class LoxErrorHandler {
     this.hasError = false;
   }
 
+  /**
+   * Holds back every report made on this thread until the returned reports are closed. Work split
+   * across threads uses this to replay its errors in source order.
+   */
+  public static Deferred deferReports() {
+    var reports = new Deferred();
+    deferred.set(reports);
+
+    return reports;
+  }
+
   public void report(ErrorMessage msg) {
+    var reports = deferred.get();
+
+    if (reports != null) {
+      reports.held.add(new Report(this, msg));
+      return;
+    }
+
     System.err.println("<" + this.instanceName + "> " + msg.format());
     this.hasError = true;
   }
+
+  public static final class Deferred implements AutoCloseable {
+    private final List<Report> held = new ArrayList<>();
+
+    private Deferred() {}
+
+    public boolean isEmpty() {
+      return this.held.isEmpty();
+    }
+
+    /** Reports everything held back, which also stops holding reports back on this thread. */
+    public void replay() {
+      this.close();
+
+      for (var report : this.held) {
+        report.handler().report(report.msg());
+      }
+    }
+
+    /**
+     * Replays only the reports positioned before the given position, dropping the rest. Returns
+     * whether anything was replayed.
+     */
+    public boolean replayBefore(int position) {
+      this.close();
+
+      var replayed = false;
+
+      for (var report : this.held) {
+        if (report.msg().position() < position) {
+          report.handler().report(report.msg());
+          replayed = true;
+        }
+      }
+
+      return replayed;
+    }
+
+    @Override
+    public void close() {
+      deferred.remove();
+    }
+  }
+
+  private record Report(LoxErrorHandler handler, ErrorMessage msg) {}
 }
@@ -1,44 +1,27 @@
 package com.dylmay.jlox.interpreter;
 
-import com.dylmay.jlox.assets.Token;
-import com.dylmay.jlox.util.RuntimeError;
-import java.util.HashMap;
-import java.util.Map;
 import javax.annotation.Nullable;
 
+/**
+ * The locals of one scope, each at the slot the resolver gave it. Top-level names aren't kept
+ * here but by name in the interpreter's globals, so the outermost frame is always empty.
+ */
 class Environment {
   private final @Nullable Environment parent;
-  private final Map<String, Object> values;
+  private final Object[] slots;
 
-  public Environment(@Nullable Environment parent, Map<String, Object> values) {
+  public Environment(@Nullable Environment parent, int size) {
     this.parent = parent;
-    this.values = values;
-  }
-
-  public Environment(@Nullable Environment parent) {
-    this(parent, new HashMap<>());
+    this.slots = new Object[size];
   }
 
   public Environment() {
-    this(null);
-  }
-
-  @Nullable
-  Object get(Token name) {
-    if (values.containsKey(name.lexeme())) {
-      return values.get(name.lexeme());
-    }
-
-    if (this.parent != null) {
-      return this.parent.get(name);
-    }
-
-    throw new RuntimeError(name.position(), "Undefined variable '" + name.lexeme() + "'");
+    this(null, 0);
   }
 
   @Nullable
-  Object getAt(int dist, String name) {
-    return ancestor(dist).values.get(name);
+  Object getAt(int dist, int slot) {
+    return ancestor(dist).slots[slot];
   }
 
   @SuppressWarnings("nullness")
@@ -53,32 +36,12 @@ class Environment {
   }
 
   @SuppressWarnings("nullness")
-  boolean define(String name, @Nullable Object value) {
-    if (!this.values.containsKey(name)) {
-      this.values.put(name, value);
-
-      return true;
-    }
-
-    return false;
-  }
-
-  @SuppressWarnings("nullness")
-  boolean assign(String name, @Nullable Object value) {
-    if (this.values.containsKey(name)) {
-      this.values.put(name, value);
-      return true;
-    }
-
-    if (this.parent != null) {
-      return this.parent.assign(name, value);
-    }
-
-    return false;
+  void define(int slot, @Nullable Object value) {
+    this.slots[slot] = value;
   }
 
   @SuppressWarnings("nullness")
-  void assignAt(int dist, String name, @Nullable Object value) {
-    ancestor(dist).values.put(name, value);
+  void assignAt(int dist, int slot, @Nullable Object value) {
+    ancestor(dist).slots[slot] = value;
   }
 }
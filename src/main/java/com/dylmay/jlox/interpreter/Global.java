@@ -93,7 +93,8 @@ class Global {
 
   private Global() {}
 
-  public static Environment create() {
-    return new Environment(null, (Map<String, Object>) globals.clone());
+  /** A fresh table of top-level names, holding only the natives. */
+  public static Map<String, Object> create() {
+    return new HashMap<>(globals);
   }
 }
@@ -25,18 +25,12 @@ import javax.annotation.Nullable;
 public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
   private static final LoxErrorHandler ERR_HNDLR = LoxErrorHandler.getInstance(Interpreter.class);
 
-  private final Environment globals;
+  private final Map<String, Object> globals;
   private Environment env;
-  private Map<Expr, Integer> locals;
 
   public Interpreter() {
     this.globals = Global.create();
-    this.env = globals;
-    this.locals = new HashMap<>();
-  }
-
-  public void resolve(Expr expr, int depth) {
-    locals.put(expr, depth);
+    this.env = new Environment();
   }
 
   @Override
@@ -45,58 +39,63 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
     Item left = this.evaluate(expr.left);
     Item right = this.evaluate(expr.right);
 
-    switch (expr.operator.type()) {
+    return this.binary(left, expr.operator, right);
+  }
+
+  @SuppressWarnings("nullness")
+  private Item binary(Item left, Token operator, Item right) {
+    switch (operator.type()) {
       case MINUS:
         assertIsNumber(left, right);
-        return new Item(left.as(Double.class) - right.as(Double.class), expr.operator.position());
+        return new Item(left.as(Double.class) - right.as(Double.class), operator.position());
 
       case SLASH:
         assertIsNumber(left, right);
-        return new Item(left.as(Double.class) / right.as(Double.class), expr.operator.position());
+        return new Item(left.as(Double.class) / right.as(Double.class), operator.position());
 
       case PLUS:
         if (left.result() instanceof Double ld && right.result() instanceof Double rd)
-          return new Item(ld + rd, expr.operator.position());
+          return new Item(ld + rd, operator.position());
         if (left.result() instanceof String ls && right.result() instanceof String rs)
-          return new Item(ls + rs, expr.operator.position());
+          return new Item(ls + rs, operator.position());
 
         break;
 
       case STAR:
         assertIsNumber(left, right);
-        return new Item(left.as(Double.class) * right.as(Double.class), expr.operator.position());
+        return new Item(left.as(Double.class) * right.as(Double.class), operator.position());
 
       case GREATER:
         assertIsNumber(left, right);
-        return new Item(left.as(Double.class) > right.as(Double.class), expr.operator.position());
+        return new Item(left.as(Double.class) > right.as(Double.class), operator.position());
 
       case GREATER_EQUAL:
         assertIsNumber(left, right);
-        return new Item(left.as(Double.class) >= right.as(Double.class), expr.operator.position());
+        return new Item(left.as(Double.class) >= right.as(Double.class), operator.position());
 
       case LESS:
         assertIsNumber(left, right);
-        return new Item(left.as(Double.class) < right.as(Double.class), expr.operator.position());
+        return new Item(left.as(Double.class) < right.as(Double.class), operator.position());
 
       case LESS_EQUAL:
         assertIsNumber(left, right);
-        return new Item(left.as(Double.class) <= right.as(Double.class), expr.operator.position());
+        return new Item(left.as(Double.class) <= right.as(Double.class), operator.position());
 
       case BANG_EQUAL:
         assertIsNumber(left, right);
         return new Item(
-            !this.isEqual(left.as(Double.class), right.as(Double.class)), expr.operator.position());
+            !this.isEqual(left.as(Double.class), right.as(Double.class)), operator.position());
 
       case EQUAL_EQUAL:
         assertIsNumber(left, right);
         return new Item(
-            this.isEqual(left.as(Double.class), right.as(Double.class)), expr.operator.position());
+            this.isEqual(left.as(Double.class), right.as(Double.class)), operator.position());
 
       case COMMA:
         return right;
     }
 
-    throw new RuntimeError(expr.operator.position(), "Unknown Binary Expression");
+    throw new RuntimeError(operator.position(), "Unknown Binary Expression");
   }
 
   @Override
@@ -144,8 +143,26 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
     }
   }
 
+  /** Switches on the node's kind rather than calling accept, whose call site is megamorphic. */
   Item evaluate(Expr expr) {
-    return expr.accept(this);
+    return switch (expr.kind) {
+      case Expr.BINARY -> this.visitBinaryExpr((Expr.Binary) expr);
+      case Expr.TERNARY -> this.visitTernaryExpr((Expr.Ternary) expr);
+      case Expr.CALL -> this.visitCallExpr((Expr.Call) expr);
+      case Expr.GROUPING -> this.visitGroupingExpr((Expr.Grouping) expr);
+      case Expr.LITERAL -> this.visitLiteralExpr((Expr.Literal) expr);
+      case Expr.UNARY -> this.visitUnaryExpr((Expr.Unary) expr);
+      case Expr.THIS -> this.visitThisExpr((Expr.This) expr);
+      case Expr.VARIABLE -> this.visitVariableExpr((Expr.Variable) expr);
+      case Expr.ASSIGN -> this.visitAssignExpr((Expr.Assign) expr);
+      case Expr.COMPOUND_ASSIGN -> this.visitCompoundAssignExpr((Expr.CompoundAssign) expr);
+      case Expr.LOGICAL -> this.visitLogicalExpr((Expr.Logical) expr);
+      case Expr.FN -> this.visitFnExpr((Expr.Fn) expr);
+      case Expr.GET -> this.visitGetExpr((Expr.Get) expr);
+      case Expr.SET -> this.visitSetExpr((Expr.Set) expr);
+      case Expr.COMPOUND_SET -> this.visitCompoundSetExpr((Expr.CompoundSet) expr);
+      default -> throw new IllegalStateException("Unknown expression kind " + expr.kind);
+    };
   }
 
   boolean isTruthy(@Nullable Item item) {
@@ -175,7 +192,19 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
   }
 
   Void execute(Stmt stmt) {
-    return stmt.accept(this);
+    return switch (stmt.kind) {
+      case Stmt.EXPRESSION -> this.visitExpressionStmt((Stmt.Expression) stmt);
+      case Stmt.VAR -> this.visitVarStmt((Stmt.Var) stmt);
+      case Stmt.BLOCK -> this.visitBlockStmt((Stmt.Block) stmt);
+      case Stmt.IF -> this.visitIfStmt((Stmt.If) stmt);
+      case Stmt.RETURN -> this.visitReturnStmt((Stmt.Return) stmt);
+      case Stmt.WHILE -> this.visitWhileStmt((Stmt.While) stmt);
+      case Stmt.FOR -> this.visitForStmt((Stmt.For) stmt);
+      case Stmt.BREAK -> this.visitBreakStmt((Stmt.Break) stmt);
+      case Stmt.CONTINUE -> this.visitContinueStmt((Stmt.Continue) stmt);
+      case Stmt.CLASS -> this.visitClassStmt((Stmt.Class) stmt);
+      default -> throw new IllegalStateException("Unknown statement kind " + stmt.kind);
+    };
   }
 
   public void interpret(List<Stmt> statements) throws RuntimeError {
@@ -208,9 +237,13 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
       value = this.evaluate(stmt.initializer).result();
     }
 
-    if (!this.env.define(stmt.name.lexeme(), value)) {
+    if (stmt.slot >= 0) {
+      this.env.define(stmt.slot, value);
+    } else if (this.globals.containsKey(stmt.name.lexeme())) {
       throw new RuntimeError(
           stmt.name.position(), "Variable '" + stmt.name.lexeme() + "' is not defined.");
+    } else {
+      this.globals.put(stmt.name.lexeme(), value);
     }
 
     // return stmt.name.lexeme() + " ==> " + (value != null ? value.toString() : "nil");
@@ -219,13 +252,21 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
 
   @Override
   public Item visitVariableExpr(Expr.Variable expr) {
-    return new Item(this.lookupVariable(expr.name, expr), expr.name.position());
+    return new Item(
+        this.lookupVariable(expr.name, expr.depth, expr.slot), expr.name.position());
   }
 
-  private @Nullable Object lookupVariable(Token name, Expr expr) {
-    var dist = this.locals.get(expr);
+  /** Reads a local from its frame, or anything else by name from the globals. */
+  private @Nullable Object lookupVariable(Token name, int depth, int slot) {
+    if (slot >= 0) return this.env.getAt(depth, slot);
 
-    return (dist != null) ? this.env.getAt(dist, name.lexeme()) : this.globals.get(name);
+    var value = this.globals.get(name.lexeme());
+
+    if (value == null && !this.globals.containsKey(name.lexeme())) {
+      throw new RuntimeError(name.position(), "Undefined variable '" + name.lexeme() + "'");
+    }
+
+    return value;
   }
 
   @Override
@@ -233,12 +274,10 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
     var value = this.evaluate(expr.value);
     var result = value != null ? value.result() : null;
 
-    var dist = locals.get(expr);
-
-    if (dist != null) {
-      env.assignAt(dist, expr.name.lexeme(), result);
+    if (expr.slot >= 0) {
+      env.assignAt(expr.depth, expr.slot, result);
     } else {
-      globals.assign(expr.name.lexeme(), result);
+      globals.replace(expr.name.lexeme(), result);
     }
 
     // if (!this.env.assign(expr.name.lexeme(), value != null ? value.result() : null)) {
@@ -249,9 +288,25 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
     return value;
   }
 
+  @Override
+  public Item visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    var current =
+        new Item(
+            this.lookupVariable(expr.name, expr.depth, expr.slot), expr.name.position());
+    var value = this.binary(current, expr.operator, this.evaluate(expr.value));
+
+    if (expr.slot >= 0) {
+      env.assignAt(expr.depth, expr.slot, value.result());
+    } else {
+      globals.replace(expr.name.lexeme(), value.result());
+    }
+
+    return value;
+  }
+
   @Override
   public Void visitBlockStmt(Stmt.Block stmt) {
-    this.executeBlock(stmt.stmts, new Environment(this.env));
+    this.executeBlock(stmt.stmts, new Environment(this.env, stmt.slots));
 
     return null;
   }
@@ -310,6 +365,47 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
     return null;
   }
 
+  /**
+   * Runs the loop in one environment for its initializer. The body only gets a fresh environment
+   * per iteration when it declares something, and a continue still runs the increment.
+   */
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    var prevEnv = this.env;
+    var loopEnv = new Environment(prevEnv, stmt.slots);
+
+    try {
+      this.env = loopEnv;
+
+      if (stmt.initializer != null) {
+        this.execute(stmt.initializer);
+      }
+
+      while (isTruthy(evaluate(stmt.condition))) {
+        try {
+          if (stmt.bodyScoped) {
+            this.executeBlock(stmt.body, new Environment(loopEnv, stmt.bodySlots));
+          } else {
+            for (Stmt bodyStmt : stmt.body) {
+              this.execute(bodyStmt);
+            }
+          }
+        } catch (Break b) {
+          break;
+        } catch (Continue c) {
+        }
+
+        if (stmt.increment != null) {
+          this.evaluate(stmt.increment);
+        }
+      }
+    } finally {
+      this.env = prevEnv;
+    }
+
+    return null;
+  }
+
   @Override
   @SuppressWarnings("nullness")
   public Item visitCallExpr(Expr.Call expr) {
@@ -374,7 +470,11 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
       superclass = superEval.as(LoxClass.class);
     }
 
-    this.env.define(stmt.name.lexeme(), null);
+    if (stmt.slot >= 0) {
+      this.env.define(stmt.slot, null);
+    } else {
+      this.globals.putIfAbsent(stmt.name.lexeme(), null);
+    }
 
     var methods = new HashMap<String, LoxFunction>();
     var fields = new HashMap<String, Object>();
@@ -400,7 +500,12 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
     }
 
     var cls = new LoxClass(stmt.name.lexeme(), methods, fields, statics, superclass);
-    this.env.assign(stmt.name.lexeme(), cls);
+    if (stmt.slot >= 0) {
+      this.env.define(stmt.slot, cls);
+    } else {
+      this.globals.put(stmt.name.lexeme(), cls);
+    }
+
     return null;
   }
 
@@ -431,8 +536,25 @@ public class Interpreter implements Expr.Visitor<Item>, Stmt.Visitor<Void> {
     throw new RuntimeError(expr.name.position(), "Only instances have properties");
   }
 
+  @Override
+  @SuppressWarnings("nullness")
+  public Item visitCompoundSetExpr(Expr.CompoundSet expr) {
+    var obj = evaluate(expr.object);
+    var res = obj != null ? obj.result() : null;
+
+    if (res instanceof LoxInstance inst) {
+      var current = new Item(inst.get(expr.name), expr.name.position());
+      var value = this.binary(current, expr.operator, evaluate(expr.value));
+
+      return new Item(inst.set(expr.name, value.result()), expr.name.position());
+    }
+
+    throw new RuntimeError(expr.name.position(), "Only instances have properties");
+  }
+
   @Override
   public Item visitThisExpr(This expr) {
-    return new Item(lookupVariable(expr.keyword, expr), expr.keyword.position());
+    return new Item(
+        lookupVariable(expr.keyword, expr.depth, expr.slot), expr.keyword.position());
   }
 }
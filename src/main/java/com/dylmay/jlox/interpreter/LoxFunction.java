@@ -30,8 +30,9 @@ class LoxFunction implements LoxCallable {
   }
 
   LoxFunction bind(LoxInstance inst) {
-    var env = new Environment(closure);
-    env.define("self", inst);
+    // the resolver gives a class scope one slot, holding self
+    var env = new Environment(closure, 1);
+    env.define(0, inst);
 
     return new LoxFunction(this.fn, env, this.isInitializer);
   }
@@ -39,18 +40,22 @@ class LoxFunction implements LoxCallable {
   @Override
   @SuppressWarnings("nullness")
   public Object call(Interpreter interpreter, List<Object> args) {
-    var env = new Environment(closure);
+    // a lazy body is parsed and resolved on its first read, which is what sizes the frame
+    var body = fn.body;
+    body.size();
+
+    var env = new Environment(closure, fn.slots);
     for (int i = 0; i < fn.parms.size(); i++) {
-      env.define(fn.parms.get(i).lexeme(), args.get(i));
+      env.define(i, args.get(i));
     }
 
     try {
-      interpreter.executeBlock(fn.body, env);
+      interpreter.executeBlock(body, env);
     } catch (Return retval) {
-      return (this.isInitializer) ? closure.getAt(0, "this") : retval.value;
+      // the instance comes back from calling the class, so an initializer itself returns nil
+      return (this.isInitializer) ? null : retval.value;
     }
 
-    if (isInitializer) return closure.getAt(0, "this");
     return null;
   }
 
@@ -0,0 +1,118 @@
+package com.dylmay.jlox.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Lexes UTF-8 bytes in place. Every char of Lox syntax is ASCII, so the lexer reads bytes as chars
+ * directly and only slices that become strings are decoded. Runs of blanks and comment bodies are
+ * skipped eight bytes at a time.
+ */
+class ByteBufferSource implements Source {
+  private static final long ONES = 0x0101010101010101L;
+  private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+  private static final long SPACES = ' ' * ONES;
+  private static final long TABS = '\t' * ONES;
+  private static final long RETURNS = '\r' * ONES;
+
+  private final ByteBuffer buffer;
+  private final ByteBuffer words;
+  private final int length;
+  private final Utf8Decoder decoder;
+  private byte[] scratch;
+
+  /** Lexes the bytes between the buffer's position and its limit, leaving the buffer untouched. */
+  ByteBufferSource(ByteBuffer buffer) {
+    this.buffer = buffer.slice();
+    this.words = this.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    this.length = this.buffer.remaining();
+    this.decoder = new Utf8Decoder();
+    this.scratch = new byte[64];
+  }
+
+  @Override
+  public char charAt(int offset) {
+    return offset < this.length ? (char) (this.buffer.get(offset) & 0xFF) : 0;
+  }
+
+  @Override
+  public boolean isEnd(int offset) {
+    return offset >= this.length;
+  }
+
+  @Override
+  public int length() {
+    return this.length;
+  }
+
+  /** Reads the same buffer with absolute gets, decoding through its own scratch space. */
+  @Override
+  public Source concurrentView() {
+    return new ByteBufferSource(this.buffer);
+  }
+
+  @Override
+  public String substring(int start, int end) {
+    var len = end - start;
+
+    if (this.buffer.hasArray()) {
+      var from = this.buffer.arrayOffset() + start;
+      return this.decoder.decode(this.buffer.array(), from, len, start);
+    }
+
+    if (this.scratch.length < len) {
+      this.scratch = new byte[Math.max(len, this.scratch.length * 2)];
+    }
+
+    this.buffer.get(start, this.scratch, 0, len);
+    return this.decoder.decode(this.scratch, 0, len, start);
+  }
+
+  @Override
+  public int codePointAt(int offset) {
+    return Utf8Decoder.codePointAt(this, offset);
+  }
+
+  @Override
+  public int charEnd(int offset) {
+    return Utf8Decoder.charEnd(this, offset);
+  }
+
+  @Override
+  public int find(int from, char first, char second) {
+    var offset = from;
+    var firsts = first * ONES;
+    var seconds = second * ONES;
+
+    for (; offset + Long.BYTES <= this.length; offset += Long.BYTES) {
+      var word = this.words.getLong(offset);
+      var found = equalBytes(word, firsts) | equalBytes(word, seconds);
+
+      if (found != 0) return offset + Long.numberOfTrailingZeros(found) / Byte.SIZE;
+    }
+
+    return Source.super.find(offset, first, second);
+  }
+
+  @Override
+  public int skipBlanks(int from) {
+    var offset = from;
+
+    for (; offset + Long.BYTES <= this.length; offset += Long.BYTES) {
+      var word = this.words.getLong(offset);
+      var blanks = equalBytes(word, SPACES) | equalBytes(word, TABS) | equalBytes(word, RETURNS);
+      var others = ~blanks & ~LOWS;
+
+      if (others != 0) return offset + Long.numberOfTrailingZeros(others) / Byte.SIZE;
+    }
+
+    return Source.super.skipBlanks(offset);
+  }
+
+  /** Sets the top bit of each byte of the word that equals the matching byte of the pattern. */
+  private static long equalBytes(long word, long pattern) {
+    var diff = word ^ pattern;
+
+    return ~(((diff & LOWS) + LOWS) | diff | LOWS);
+  }
+}
@@ -0,0 +1,102 @@
+package com.dylmay.jlox.lexer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Pulls UTF-8 bytes from a channel on demand, keeping only the window from the start of the current
+ * token onwards. Like {@link ByteBufferSource}, bytes are read as chars and only slices that become
+ * strings are decoded.
+ */
+class ChannelSource implements Source {
+  private static final int CHUNK_SIZE = 8192;
+
+  private final ReadableByteChannel channel;
+  private final Utf8Decoder decoder;
+  private ByteBuffer buffer;
+
+  private int base;
+  private int keep;
+  private boolean drained;
+
+  ChannelSource(ReadableByteChannel channel) {
+    this.channel = channel;
+    this.decoder = new Utf8Decoder();
+    this.buffer = ByteBuffer.allocate(CHUNK_SIZE);
+    this.base = 0;
+    this.keep = 0;
+    this.drained = false;
+  }
+
+  @Override
+  public char charAt(int offset) {
+    return this.fill(offset) ? (char) (this.buffer.get(offset - this.base) & 0xFF) : 0;
+  }
+
+  @Override
+  public boolean isEnd(int offset) {
+    return !this.fill(offset);
+  }
+
+  @Override
+  public int length() {
+    return -1;
+  }
+
+  @Override
+  public String substring(int start, int end) {
+    return this.decoder.decode(this.buffer.array(), start - this.base, end - start, start);
+  }
+
+  @Override
+  public int codePointAt(int offset) {
+    return Utf8Decoder.codePointAt(this, offset);
+  }
+
+  @Override
+  public int charEnd(int offset) {
+    return Utf8Decoder.charEnd(this, offset);
+  }
+
+  @Override
+  public void release(int offset) {
+    this.keep = offset;
+  }
+
+  private boolean fill(int offset) {
+    while (offset >= this.base + this.buffer.position()) {
+      if (this.drained) return false;
+
+      if (!this.buffer.hasRemaining()) {
+        this.compact();
+      }
+
+      try {
+        if (this.channel.read(this.buffer) < 0) {
+          this.drained = true;
+        }
+      } catch (IOException exc) {
+        throw new UncheckedIOException(exc);
+      }
+    }
+
+    return true;
+  }
+
+  private void compact() {
+    var discard = this.keep - this.base;
+
+    if (discard > 0) {
+      this.buffer.flip().position(discard);
+      this.buffer.compact();
+      this.base += discard;
+    }
+
+    if (!this.buffer.hasRemaining()) {
+      var grown = ByteBuffer.allocate(this.buffer.capacity() * 2);
+      this.buffer = grown.put(this.buffer.flip());
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.dylmay.jlox.lexer;
+
+import javax.annotation.Nullable;
+
+/**
+ * Literal values and names shared by every token of one compilation. Equal numbers are boxed once
+ * and equal strings are the same instance, so map lookups on names hit the identity check in
+ * {@link String#equals} instead of comparing characters.
+ */
+final class ConstantPool {
+  private static final int MIN_CAPACITY = 64;
+
+  private long[] numberBits;
+  private Double[] numbers;
+  private int numberCount;
+
+  private int[] stringHashes;
+  private String[] strings;
+  private int stringCount;
+
+  ConstantPool() {
+    this.numberBits = new long[MIN_CAPACITY];
+    this.numbers = new Double[MIN_CAPACITY];
+    this.numberCount = 0;
+    this.stringHashes = new int[MIN_CAPACITY];
+    this.strings = new String[MIN_CAPACITY];
+    this.stringCount = 0;
+  }
+
+  Double number(double value) {
+    return this.number(value, null);
+  }
+
+  /**
+   * The pooled string for a slice of the source, only allocated the first time it is seen. Slices
+   * that aren't ASCII are decoded first, as a byte source's chars then differ from the string's.
+   */
+  String string(Source src, int start, int end) {
+    var hash = 0;
+
+    for (int i = start; i < end; i++) {
+      var c = src.charAt(i);
+
+      if (c >= 0x80) return this.intern(src.substring(start, end));
+
+      hash = 31 * hash + c;
+    }
+
+    var mask = this.strings.length - 1;
+    var slot = spread(hash) & mask;
+
+    for (var pooled = this.strings[slot]; pooled != null; pooled = this.strings[slot]) {
+      if (this.stringHashes[slot] == hash && matches(pooled, src, start, end)) return pooled;
+
+      slot = (slot + 1) & mask;
+    }
+
+    return this.addString(slot, hash, src.substring(start, end));
+  }
+
+  String intern(String value) {
+    var hash = value.hashCode();
+    var mask = this.strings.length - 1;
+    var slot = spread(hash) & mask;
+
+    for (var pooled = this.strings[slot]; pooled != null; pooled = this.strings[slot]) {
+      if (this.stringHashes[slot] == hash && pooled.equals(value)) return pooled;
+
+      slot = (slot + 1) & mask;
+    }
+
+    return this.addString(slot, hash, value);
+  }
+
+  /** Pools a literal from another compilation's pool, such as a chunk lexed on its own. */
+  @Nullable
+  Object share(@Nullable Object literal) {
+    if (literal instanceof String str) return this.intern(str);
+    if (literal instanceof Double num) return this.number(num, num);
+
+    return literal;
+  }
+
+  private Double number(double value, @Nullable Double box) {
+    var bits = Double.doubleToRawLongBits(value);
+    var mask = this.numbers.length - 1;
+    var slot = hash(bits) & mask;
+
+    while (this.numbers[slot] != null) {
+      if (this.numberBits[slot] == bits) return this.numbers[slot];
+
+      slot = (slot + 1) & mask;
+    }
+
+    var boxed = box != null ? box : Double.valueOf(value);
+    this.numberBits[slot] = bits;
+    this.numbers[slot] = boxed;
+
+    if (++this.numberCount * 2 > this.numbers.length) {
+      this.rehashNumbers();
+    }
+
+    return boxed;
+  }
+
+  private String addString(int slot, int hash, String value) {
+    this.stringHashes[slot] = hash;
+    this.strings[slot] = value;
+
+    if (++this.stringCount * 2 > this.strings.length) {
+      this.rehashStrings();
+    }
+
+    return value;
+  }
+
+  private static boolean matches(String pooled, Source src, int start, int end) {
+    if (pooled.length() != end - start) return false;
+
+    for (int i = 0; i < pooled.length(); i++) {
+      if (pooled.charAt(i) != src.charAt(start + i)) return false;
+    }
+
+    return true;
+  }
+
+  private static int hash(long bits) {
+    var mixed = bits * 0x9E3779B97F4A7C15L;
+
+    return (int) (mixed >>> 32);
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private void rehashNumbers() {
+    var oldBits = this.numberBits;
+    var oldNumbers = this.numbers;
+    var mask = oldNumbers.length * 2 - 1;
+
+    this.numberBits = new long[oldNumbers.length * 2];
+    this.numbers = new Double[oldNumbers.length * 2];
+
+    for (int i = 0; i < oldNumbers.length; i++) {
+      if (oldNumbers[i] == null) continue;
+
+      var slot = hash(oldBits[i]) & mask;
+      while (this.numbers[slot] != null) slot = (slot + 1) & mask;
+
+      this.numberBits[slot] = oldBits[i];
+      this.numbers[slot] = oldNumbers[i];
+    }
+  }
+
+  private void rehashStrings() {
+    var oldHashes = this.stringHashes;
+    var oldStrings = this.strings;
+    var mask = oldStrings.length * 2 - 1;
+
+    this.stringHashes = new int[oldStrings.length * 2];
+    this.strings = new String[oldStrings.length * 2];
+
+    for (int i = 0; i < oldStrings.length; i++) {
+      if (oldStrings[i] == null) continue;
+
+      var slot = spread(oldHashes[i]) & mask;
+      while (this.strings[slot] != null) slot = (slot + 1) & mask;
+
+      this.stringHashes[slot] = oldHashes[i];
+      this.strings[slot] = oldStrings[i];
+    }
+  }
+}
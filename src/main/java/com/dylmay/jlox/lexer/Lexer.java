@@ -1,47 +1,164 @@
 package com.dylmay.jlox.lexer;
 
-import com.dylmay.jlox.assets.Position;
+import com.dylmay.jlox.assets.LineMap;
 import com.dylmay.jlox.assets.Token;
 import com.dylmay.jlox.assets.TokenType;
 import com.dylmay.jlox.error.ErrorMessage;
 import com.dylmay.jlox.error.LoxErrorHandler;
 import com.dylmay.jlox.util.CharUtil;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.Nullable;
 
-public class Lexer {
+public class Lexer implements TokenStream {
   private static final LoxErrorHandler ERR_HNDLR = LoxErrorHandler.getInstance(Lexer.class);
-  private final List<Token> tokens;
-  private final String src;
+  private static final int MAX_EXACT_DIGITS = 15;
+  private static final int MAX_PEEK = 2;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+  };
+
+  private final Source src;
+  private final LineMap lines;
+  private final ConstantPool constants;
+  private final int end;
+  private @Nullable TokenType scannedType;
+  private @Nullable Object scannedLiteral;
 
   private int tokenStart;
   private int symCurrent;
 
-  private int newlineCnt;
-  private int newlineOffset;
-
   public Lexer(String source) {
+    this(new StringSource(source));
+  }
+
+  /** Lexes the text from the offset onwards, with positions counted from there. */
+  public Lexer(CharSequence text, int from) {
+    this(new TextSource(text, from));
+  }
+
+  /** Lexes UTF-8 encoded bytes in place, without decoding the whole buffer first. */
+  public Lexer(ByteBuffer utf8Source) {
+    this(new ByteBufferSource(utf8Source));
+  }
+
+  public Lexer(byte[] utf8Source) {
+    this(ByteBuffer.wrap(utf8Source));
+  }
+
+  public Lexer(Reader reader) {
+    this(new ReaderSource(reader));
+  }
+
+  /**
+   * Streams UTF-8 encoded bytes, decoding only the slices that become strings. Positions are ints,
+   * so nothing past the first {@link Integer#MAX_VALUE} bytes is lexed.
+   */
+  public Lexer(ReadableByteChannel channel) {
+    this(new ChannelSource(channel));
+  }
+
+  Lexer(Source source) {
+    this(source, LineMap.create(source.length()), 0, Integer.MAX_VALUE);
+  }
+
+  /** Lexes only the offsets from start up to end, recording lines in the given map. */
+  Lexer(Source source, LineMap lines, int start, int end) {
     this.src = source;
-    this.tokens = new ArrayList<>();
-    this.tokenStart = 0;
-    this.symCurrent = 0;
-    this.newlineCnt = 0;
-    this.newlineOffset = 0;
+    this.lines = lines;
+    this.constants = new ConstantPool();
+    this.scannedType = null;
+    this.scannedLiteral = null;
+    this.tokenStart = start;
+    this.symCurrent = start;
+    this.end = end;
+  }
+
+  public LineMap lineMap() {
+    return this.lines;
+  }
+
+  /** Every char the lexer has looked at so far lies before this offset. */
+  public int examined() {
+    return this.symCurrent + MAX_PEEK;
   }
 
   public List<Token> scanTokens() {
-    while (!this.isEOF()) {
+    var tokens = new ArrayList<Token>();
+    Token token;
+
+    do {
+      token = this.next();
+      tokens.add(token);
+    } while (token.type() != TokenType.EOF);
+
+    return tokens;
+  }
+
+  /**
+   * Scans the remaining source into a {@link TokenBuffer}. No {@link Token} is created until the
+   * buffer is asked for one.
+   */
+  public TokenBuffer scanPacked() {
+    var tokens = this.scanChunk();
+
+    this.packToken(tokens);
+    return tokens;
+  }
+
+  /** Like {@link #scanPacked} but leaves off the EOF, as more tokens follow this chunk. */
+  TokenBuffer scanChunk() {
+    var tokens = new TokenBuffer(this.src, this.lines.base(), this.constants);
+
+    while (this.scan() != TokenType.EOF) {
+      this.packToken(tokens);
+    }
+
+    return tokens;
+  }
+
+  @Override
+  public Token next() {
+    this.src.release(this.symCurrent);
+    var type = this.scan();
+    var lexeme = type.lexeme();
+
+    return new Token(
+        type,
+        lexeme != null ? lexeme : this.getLexeme(),
+        this.scannedLiteral,
+        this.getCurPos());
+  }
+
+  @SuppressWarnings("nullness")
+  private TokenType scan() {
+    this.scannedType = null;
+    this.scannedLiteral = null;
+
+    while (this.scannedType == null) {
+      if (this.isEOF()) {
+        this.lines.close(this.symCurrent);
+        this.addToken(TokenType.EOF);
+        break;
+      }
+
       this.tokenStart = this.symCurrent;
       this.nextToken();
     }
 
-    this.addToken(TokenType.EOF);
-    return this.tokens;
+    return this.scannedType;
+  }
+
+  @SuppressWarnings("nullness")
+  private void packToken(TokenBuffer tokens) {
+    tokens.add(this.scannedType, this.tokenStart, this.symCurrent, this.scannedLiteral);
   }
 
   private boolean isEOF() {
-    return this.symCurrent >= src.length();
+    return this.symCurrent >= this.end || this.src.isEnd(this.symCurrent);
   }
 
   private void nextToken() {
@@ -129,10 +246,14 @@ public class Lexer {
         procStringToken(nextChar);
         break;
 
+      case '\n':
+        this.lines.addLine(this.symCurrent);
+        break;
+
       case ' ':
       case '\r':
       case '\t':
-      case '\n':
+        this.symCurrent = Math.min(this.src.skipBlanks(this.symCurrent), this.end);
         break;
 
       default:
@@ -141,43 +262,55 @@ public class Lexer {
         } else if (CharUtil.isAlpha(nextChar)) {
           procIdentifier();
         } else {
-          ERR_HNDLR.report(
-              new ErrorMessage()
-                  .message("Unexpected character: " + nextChar)
-                  .position(this.getCurPos()));
+          this.procUnexpectedChar();
         }
 
         break;
     }
   }
 
-  private void incIfNewline() {
-    if (this.peek() == '\n') {
-      this.newlineCnt++;
-      this.newlineOffset = this.symCurrent + 1;
+  private void advanceCountingLines() {
+    if (this.advance() == '\n') {
+      this.lines.addLine(this.symCurrent);
     }
   }
 
   private String getLexeme() {
-    return this.src.substring(this.tokenStart, this.symCurrent);
+    return this.constants.string(this.src, this.tokenStart, this.symCurrent);
   }
 
   private void procIdentifier() {
     while (CharUtil.isAlphaNumeric(peek())) advance();
 
-    TokenType keyword = TokenKeywords.match(getLexeme());
+    addToken(TokenKeywords.match(this.src, this.tokenStart, this.symCurrent));
+  }
+
+  private void procUnexpectedChar() {
+    var codePoint = this.src.codePointAt(this.tokenStart);
+    this.symCurrent = this.src.charEnd(this.tokenStart);
+
+    var message =
+        codePoint >= 0
+            ? "Unexpected character: " + Character.toString(codePoint)
+            : String.format("Invalid UTF-8 byte: 0x%02X", (int) this.src.charAt(this.tokenStart));
 
-    addToken(keyword != null ? keyword : TokenType.IDENTIFIER);
+    ERR_HNDLR.report(new ErrorMessage().message(message).position(this.getCurPos()));
   }
 
   private void procLineComment() {
-    while (!this.match('\n') && !this.isEOF()) advance();
+    this.skipTo('\n', '\n');
+
+    if (!this.isEOF()) {
+      this.advanceCountingLines();
+    }
   }
 
   private void procBlockComment() {
     var badBlock = new ErrorMessage().message("Unterminated comment. must end with \"*/\"");
 
     while (true) {
+      this.skipTo('*', '\n');
+
       if (this.isEOF()) {
         ERR_HNDLR.report(badBlock.position(this.getCurPos()));
         return;
@@ -194,12 +327,12 @@ public class Lexer {
         }
       }
 
-      this.advance();
+      this.advanceCountingLines();
     }
   }
 
   private void procStringToken(char stringIdentifier) {
-    while (peek() != stringIdentifier && !this.isEOF()) advance();
+    while (peek() != stringIdentifier && !this.isEOF()) advanceCountingLines();
 
     if (this.isEOF()) {
       ERR_HNDLR.report(
@@ -211,19 +344,50 @@ public class Lexer {
 
     advance();
 
-    addToken(TokenType.STRING, this.src.substring(this.tokenStart + 1, this.symCurrent - 1));
+    addToken(
+        TokenType.STRING,
+        this.constants.string(this.src, this.tokenStart + 1, this.symCurrent - 1));
   }
 
   private void procNumToken() {
-    while (CharUtil.isDigit(peek())) advance();
+    long mantissa = this.src.charAt(this.tokenStart) - '0';
+    int digits = 1;
+    int fractionDigits = 0;
+
+    while (CharUtil.isDigit(peek())) {
+      mantissa = mantissa * 10 + (advance() - '0');
+      digits++;
+    }
 
     if (peek() == '.' && CharUtil.isDigit(peek(1))) {
       advance();
 
-      while (CharUtil.isDigit(peek())) advance();
+      while (CharUtil.isDigit(peek())) {
+        mantissa = mantissa * 10 + (advance() - '0');
+        digits++;
+        fractionDigits++;
+      }
     }
 
-    addToken(TokenType.NUMBER, Double.parseDouble(this.getLexeme()));
+    var value = this.toDouble(mantissa, digits, fractionDigits);
+    addToken(TokenType.NUMBER, this.constants.number(value));
+  }
+
+  /**
+   * Up to 15 digits and their power of ten both fit exactly in a double, so a single correctly
+   * rounded division gives the correctly rounded value. Longer literals are parsed instead.
+   */
+  private double toDouble(long mantissa, int digits, int fractionDigits) {
+    if (digits > MAX_EXACT_DIGITS) {
+      return Double.parseDouble(this.src.substring(this.tokenStart, this.symCurrent));
+    }
+
+    return fractionDigits == 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+  }
+
+  /** Moves up to the next of either char, skipping everything in between in bulk. */
+  private void skipTo(char first, char second) {
+    this.symCurrent = Math.min(this.src.find(this.symCurrent, first, second), this.end);
   }
 
   private char peek() {
@@ -231,20 +395,16 @@ public class Lexer {
   }
 
   private char peek(int depth) {
-    if (this.isEOF()) return 0;
-
     return this.src.charAt(this.symCurrent + depth);
   }
 
   private char advance() {
-    this.incIfNewline();
     return this.src.charAt(this.symCurrent++);
   }
 
   private boolean match(char expected) {
     if (this.peek() != expected) return false;
 
-    this.incIfNewline();
     this.symCurrent++;
     return true;
   }
@@ -254,10 +414,11 @@ public class Lexer {
   }
 
   private void addToken(TokenType type, @Nullable Object literal) {
-    tokens.add(new Token(type, this.getLexeme(), literal, this.getCurPos()));
+    this.scannedType = type;
+    this.scannedLiteral = literal;
   }
 
-  private Position getCurPos() {
-    return new Position(this.newlineCnt + 1, Math.max(this.tokenStart - this.newlineOffset, 0));
+  private int getCurPos() {
+    return this.lines.base() + this.tokenStart;
   }
 }
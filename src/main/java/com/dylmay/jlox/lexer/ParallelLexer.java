@@ -0,0 +1,163 @@
+package com.dylmay.jlox.lexer;
+
+import com.dylmay.jlox.assets.LineMap;
+import com.dylmay.jlox.error.LoxErrorHandler;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Lexes a whole source in chunks on the common {@link ForkJoinPool}. Chunks end just after a
+ * newline outside any string or comment, so no token spans two of them. The chunk buffers, line
+ * starts and errors are stitched back together in source order, giving the same result as a single
+ * {@link Lexer}.
+ */
+public final class ParallelLexer {
+  private static final int MIN_CHUNK_SIZE = 1 << 20;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private ParallelLexer() {}
+
+  public static TokenBuffer scan(String source) {
+    var src = new StringSource(source);
+
+    return ParallelLexer.scan(src, () -> src, chunkSize(source.length()));
+  }
+
+  /** Each chunk gets its own view of the bytes, as decoding slices isn't thread-safe. */
+  public static TokenBuffer scan(ByteBuffer utf8Source) {
+    return ParallelLexer.scan(
+        new ByteBufferSource(utf8Source),
+        () -> new ByteBufferSource(utf8Source),
+        chunkSize(utf8Source.remaining()));
+  }
+
+  static TokenBuffer scan(Source src, Supplier<Source> chunkSource, int chunkSize) {
+    var lines = LineMap.create(src.length());
+    var splits = splitPoints(src, chunkSize);
+    var chunks = new ArrayList<Chunk>();
+
+    for (int i = 1; i < splits.length; i++) {
+      var lexer = new Lexer(chunkSource.get(), lines.detached(), splits[i - 1], splits[i]);
+
+      chunks.add(new Chunk(lexer, i == splits.length - 1));
+    }
+
+    ForkJoinTask.invokeAll(chunks);
+
+    var tokens = new TokenBuffer(src, lines.base(), new ConstantPool());
+
+    for (var chunk : chunks) {
+      lines.addLines(chunk.lexer.lineMap());
+      tokens.append(chunk.tokens());
+      chunk.reports().replay();
+    }
+
+    return tokens;
+  }
+
+  private static int chunkSize(int length) {
+    var threads = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+
+    return Math.max(MIN_CHUNK_SIZE, length / threads);
+  }
+
+  /**
+   * Offsets just past a newline the lexer reaches outside a string or comment, at least chunkSize
+   * apart, bracketed by the start and end of the source. Strings and comments are skipped exactly
+   * as {@link Lexer} does, unterminated ones running to the end.
+   */
+  static int[] splitPoints(Source src, int chunkSize) {
+    var length = src.length();
+    var splits = new int[length / chunkSize + 2];
+    var count = 1;
+    var next = chunkSize;
+    var i = 0;
+
+    while (i < length) {
+      var c = src.charAt(i++);
+
+      if (c == '"' || c == '\'') {
+        while (i < length && src.charAt(i) != c) i++;
+        i++;
+        continue;
+      }
+
+      if (c == '/' && src.charAt(i) == '*') {
+        i = skipBlockComment(src, length, i + 1);
+        continue;
+      }
+
+      if (c == '/' && src.charAt(i) == '/') {
+        i = skipLineComment(src, length, i + 1);
+      } else if (c != '\n') {
+        continue;
+      }
+
+      if (i >= next && i < length) {
+        splits[count++] = i;
+        next = i + chunkSize;
+      }
+    }
+
+    splits[count++] = length;
+    return Arrays.copyOf(splits, count);
+  }
+
+  private static int skipLineComment(Source src, int length, int i) {
+    while (i < length) {
+      if (src.charAt(i++) == '\n') break;
+    }
+
+    return i;
+  }
+
+  private static int skipBlockComment(Source src, int length, int i) {
+    while (i < length) {
+      if (src.charAt(i) == '*') {
+        if (++i >= length) break;
+
+        if (src.charAt(i) == '/') return i + 1;
+      }
+
+      i++;
+    }
+
+    return length;
+  }
+
+  private static final class Chunk extends RecursiveAction {
+    private final Lexer lexer;
+    private final boolean last;
+    private @Nullable TokenBuffer tokens;
+    private @Nullable LoxErrorHandler.Deferred reports;
+
+    Chunk(Lexer lexer, boolean last) {
+      this.lexer = lexer;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      try (var held = LoxErrorHandler.deferReports()) {
+        this.tokens = this.last ? this.lexer.scanPacked() : this.lexer.scanChunk();
+        this.reports = held;
+      }
+    }
+
+    @SuppressWarnings("nullness")
+    TokenBuffer tokens() {
+      return this.tokens;
+    }
+
+    @SuppressWarnings("nullness")
+    LoxErrorHandler.Deferred reports() {
+      return this.reports;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.dylmay.jlox.lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Pulls chars from a {@link Reader} on demand, only keeping the window from the start of the
+ * current token onwards. The window grows if a single token outgrows it.
+ */
+class ReaderSource implements Source {
+  private static final int CHUNK_SIZE = 8192;
+
+  private final Reader reader;
+  private char[] buffer;
+
+  private int base;
+  private int limit;
+  private int keep;
+  private boolean drained;
+
+  ReaderSource(Reader reader) {
+    this.reader = reader;
+    this.buffer = new char[CHUNK_SIZE];
+    this.base = 0;
+    this.limit = 0;
+    this.keep = 0;
+    this.drained = false;
+  }
+
+  @Override
+  public char charAt(int offset) {
+    return this.fill(offset) ? this.buffer[offset - this.base] : 0;
+  }
+
+  @Override
+  public boolean isEnd(int offset) {
+    return !this.fill(offset);
+  }
+
+  @Override
+  public int length() {
+    return -1;
+  }
+
+  @Override
+  public String substring(int start, int end) {
+    return new String(this.buffer, start - this.base, end - start);
+  }
+
+  @Override
+  public void release(int offset) {
+    this.keep = offset;
+  }
+
+  private boolean fill(int offset) {
+    while (offset >= this.base + this.limit) {
+      if (this.drained) return false;
+
+      if (this.limit == this.buffer.length) {
+        this.compact();
+      }
+
+      try {
+        var read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+
+        if (read < 0) {
+          this.drained = true;
+        } else {
+          this.limit += read;
+        }
+      } catch (IOException exc) {
+        throw new UncheckedIOException(exc);
+      }
+    }
+
+    return true;
+  }
+
+  private void compact() {
+    var discard = this.keep - this.base;
+
+    if (discard > 0) {
+      System.arraycopy(this.buffer, discard, this.buffer, 0, this.limit - discard);
+      this.base += discard;
+      this.limit -= discard;
+    }
+
+    if (this.limit == this.buffer.length) {
+      this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+    }
+  }
+}
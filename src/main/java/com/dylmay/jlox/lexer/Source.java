@@ -0,0 +1,66 @@
+package com.dylmay.jlox.lexer;
+
+import javax.annotation.Nullable;
+
+interface Source {
+  /** Returns the char at the absolute offset, or 0 once the offset is past the end. */
+  char charAt(int offset);
+
+  boolean isEnd(int offset);
+
+  /** The total length, or -1 if it isn't known until the end is reached. */
+  int length();
+
+  String substring(int start, int end);
+
+  /** The code point starting at the offset, or -1 if the source is malformed there. */
+  default int codePointAt(int offset) {
+    return this.charAt(offset);
+  }
+
+  /** The end of the character starting at the offset, which may span several offsets. */
+  default int charEnd(int offset) {
+    return offset + 1;
+  }
+
+  /** The first offset from the given one holding either char, or the end if neither is found. */
+  default int find(int from, char first, char second) {
+    var offset = from;
+
+    while (!this.isEnd(offset)) {
+      var c = this.charAt(offset);
+
+      if (c == first || c == second) break;
+
+      offset++;
+    }
+
+    return offset;
+  }
+
+  /** The first offset from the given one that isn't a space, tab or carriage return. */
+  default int skipBlanks(int from) {
+    var offset = from;
+
+    while (!this.isEnd(offset)) {
+      var c = this.charAt(offset);
+
+      if (c != ' ' && c != '\t' && c != '\r') break;
+
+      offset++;
+    }
+
+    return offset;
+  }
+
+  /** Marks every char before the offset as no longer needed by the lexer. */
+  default void release(int offset) {}
+
+  /**
+   * Another reader over the same chars that can be used on a different thread, or null if the
+   * source can only be read from one.
+   */
+  default @Nullable Source concurrentView() {
+    return null;
+  }
+}
@@ -0,0 +1,54 @@
+package com.dylmay.jlox.lexer;
+
+class StringSource implements Source {
+  private final String src;
+
+  StringSource(String src) {
+    this.src = src;
+  }
+
+  @Override
+  public char charAt(int offset) {
+    return offset < this.src.length() ? this.src.charAt(offset) : 0;
+  }
+
+  @Override
+  public boolean isEnd(int offset) {
+    return offset >= this.src.length();
+  }
+
+  @Override
+  public int length() {
+    return this.src.length();
+  }
+
+  @Override
+  public String substring(int start, int end) {
+    return this.src.substring(start, end);
+  }
+
+  /** Single chars use the JDK's intrinsic search. */
+  @Override
+  public int find(int from, char first, char second) {
+    if (first != second) return Source.super.find(from, first, second);
+
+    var offset = this.src.indexOf(first, from);
+
+    return offset >= 0 ? offset : Math.max(from, this.src.length());
+  }
+
+  @Override
+  public int codePointAt(int offset) {
+    return this.src.codePointAt(offset);
+  }
+
+  @Override
+  public int charEnd(int offset) {
+    return offset + Character.charCount(this.codePointAt(offset));
+  }
+
+  @Override
+  public Source concurrentView() {
+    return this;
+  }
+}
@@ -0,0 +1,42 @@
+package com.dylmay.jlox.lexer;
+
+/** Editable text read from an offset onwards, which the lexer sees as offset 0. */
+class TextSource implements Source {
+  private final CharSequence text;
+  private final int from;
+
+  TextSource(CharSequence text, int from) {
+    this.text = text;
+    this.from = from;
+  }
+
+  @Override
+  public char charAt(int offset) {
+    return this.isEnd(offset) ? 0 : this.text.charAt(this.from + offset);
+  }
+
+  @Override
+  public boolean isEnd(int offset) {
+    return this.from + offset >= this.text.length();
+  }
+
+  @Override
+  public int length() {
+    return this.text.length() - this.from;
+  }
+
+  @Override
+  public String substring(int start, int end) {
+    return this.text.subSequence(this.from + start, this.from + end).toString();
+  }
+
+  @Override
+  public int codePointAt(int offset) {
+    return Character.codePointAt(this.text, this.from + offset);
+  }
+
+  @Override
+  public int charEnd(int offset) {
+    return offset + Character.charCount(this.codePointAt(offset));
+  }
+}
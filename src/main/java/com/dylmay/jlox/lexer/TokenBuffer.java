@@ -0,0 +1,159 @@
+package com.dylmay.jlox.lexer;
+
+import com.dylmay.jlox.assets.Token;
+import com.dylmay.jlox.assets.TokenType;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Packed token stream, stored as parallel arrays indexed by token. Literal values live in a side
+ * table, and lexemes are sliced from the source and positions derived from the start offsets only
+ * when a {@link Token} is materialized.
+ */
+public final class TokenBuffer {
+  private static final TokenType[] TYPES = TokenType.values();
+  private static final int NO_LITERAL = -1;
+  private static final int MIN_CAPACITY = 16;
+
+  private final Source src;
+  private final int base;
+  private final ConstantPool constants;
+
+  private byte[] types;
+  private int[] starts;
+  private int[] lengths;
+  private int[] literals;
+  private int size;
+
+  private Object[] literalPool;
+  private int literalCount;
+
+  TokenBuffer(Source src, int base, ConstantPool constants) {
+    this.src = src;
+    this.base = base;
+    this.constants = constants;
+    this.types = new byte[MIN_CAPACITY];
+    this.starts = new int[MIN_CAPACITY];
+    this.lengths = new int[MIN_CAPACITY];
+    this.literals = new int[MIN_CAPACITY];
+    this.size = 0;
+    this.literalPool = new Object[MIN_CAPACITY];
+    this.literalCount = 0;
+  }
+
+  void add(TokenType type, int start, int end, @Nullable Object literal) {
+    if (this.size == this.types.length) {
+      this.grow(this.size + 1);
+    }
+
+    this.types[this.size] = (byte) type.ordinal();
+    this.starts[this.size] = start;
+    this.lengths[this.size] = end - start;
+    this.literals[this.size] = literal != null ? this.addLiteral(literal) : NO_LITERAL;
+    this.size++;
+  }
+
+  /**
+   * Appends the tokens of a buffer lexed from a later part of the same source, moving its literals
+   * over to this buffer's pool.
+   */
+  void append(TokenBuffer other) {
+    if (this.size + other.size > this.types.length) {
+      this.grow(this.size + other.size);
+    }
+
+    System.arraycopy(other.types, 0, this.types, this.size, other.size);
+    System.arraycopy(other.starts, 0, this.starts, this.size, other.size);
+    System.arraycopy(other.lengths, 0, this.lengths, this.size, other.size);
+
+    for (int i = 0; i < other.size; i++) {
+      var literal = other.literals[i];
+      this.literals[this.size + i] =
+          literal != NO_LITERAL ? literal + this.literalCount : NO_LITERAL;
+    }
+
+    var literalCount = this.literalCount + other.literalCount;
+
+    if (literalCount > this.literalPool.length) {
+      var capacity = Math.max(this.literalPool.length * 2, literalCount);
+      this.literalPool = Arrays.copyOf(this.literalPool, capacity);
+    }
+
+    for (int i = 0; i < other.literalCount; i++) {
+      this.literalPool[this.literalCount + i] = this.constants.share(other.literalPool[i]);
+    }
+
+    this.literalCount = literalCount;
+    this.size += other.size;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public TokenType type(int index) {
+    return TYPES[this.types[index]];
+  }
+
+  public @Nullable Object literal(int index) {
+    var literal = this.literals[index];
+
+    return literal != NO_LITERAL ? this.literalPool[literal] : null;
+  }
+
+  public int position(int index) {
+    return this.base + this.starts[index];
+  }
+
+  /**
+   * A reader over the same tokens that can be used on another thread. It has its own view of the
+   * source and its own constant pool, so lexemes are only interned within the view. Returns null
+   * if the source can't be read from several threads.
+   */
+  public @Nullable TokenBuffer concurrentView() {
+    var src = this.src.concurrentView();
+
+    if (src == null) return null;
+
+    var view = new TokenBuffer(src, this.base, new ConstantPool());
+    view.types = this.types;
+    view.starts = this.starts;
+    view.lengths = this.lengths;
+    view.literals = this.literals;
+    view.size = this.size;
+    view.literalPool = this.literalPool;
+    view.literalCount = this.literalCount;
+
+    return view;
+  }
+
+  public Token token(int index) {
+    var type = this.type(index);
+    var lexeme = type.lexeme();
+
+    if (lexeme == null) {
+      var start = this.starts[index];
+      lexeme = this.constants.string(this.src, start, start + this.lengths[index]);
+    }
+
+    return new Token(type, lexeme, this.literal(index), this.position(index));
+  }
+
+  private int addLiteral(Object literal) {
+    if (this.literalCount == this.literalPool.length) {
+      this.literalPool = Arrays.copyOf(this.literalPool, this.literalCount * 2);
+    }
+
+    this.literalPool[this.literalCount] = literal;
+    return this.literalCount++;
+  }
+
+  private void grow(int minCapacity) {
+    var capacity = Math.max(this.types.length * 2, minCapacity);
+
+    this.types = Arrays.copyOf(this.types, capacity);
+    this.starts = Arrays.copyOf(this.starts, capacity);
+    this.lengths = Arrays.copyOf(this.lengths, capacity);
+    this.literals = Arrays.copyOf(this.literals, capacity);
+  }
+}
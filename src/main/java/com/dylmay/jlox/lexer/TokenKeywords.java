@@ -1,39 +1,103 @@
 package com.dylmay.jlox.lexer;
 
 import com.dylmay.jlox.assets.TokenType;
-import java.util.HashMap;
-import java.util.Map;
-import javax.annotation.Nullable;
 
+/**
+ * Classifies identifiers against the reserved words straight from the source range. No two
+ * keywords share both a length and a first char, so that pair picks the only candidate and a
+ * single comparison settles it.
+ */
 class TokenKeywords {
   private TokenKeywords() {}
 
-  private static final Map<String, TokenType> KEYWORDS;
-
-  static {
-    KEYWORDS = new HashMap<>();
-    KEYWORDS.put("and", TokenType.AND);
-    KEYWORDS.put("class", TokenType.CLASS);
-    KEYWORDS.put("else", TokenType.ELSE);
-    KEYWORDS.put("false", TokenType.FALSE);
-    KEYWORDS.put("for", TokenType.FOR);
-    KEYWORDS.put("fn", TokenType.FN);
-    KEYWORDS.put("if", TokenType.IF);
-    KEYWORDS.put("nil", TokenType.NIL);
-    KEYWORDS.put("or", TokenType.OR);
-    KEYWORDS.put("super", TokenType.SUPER);
-    KEYWORDS.put("self", TokenType.THIS);
-    KEYWORDS.put("true", TokenType.TRUE);
-    KEYWORDS.put("let", TokenType.LET);
-    KEYWORDS.put("while", TokenType.WHILE);
-    KEYWORDS.put("return", TokenType.RETURN);
-    KEYWORDS.put("continue", TokenType.CONTINUE);
-    KEYWORDS.put("break", TokenType.BREAK);
-    KEYWORDS.put("mut", TokenType.MUT);
-    KEYWORDS.put("static", TokenType.STATIC);
+  public static TokenType match(Source src, int start, int end) {
+    switch (end - start) {
+      case 2:
+        switch (src.charAt(start)) {
+          case 'f':
+            return matchRest(src, start, TokenType.FN);
+          case 'i':
+            return matchRest(src, start, TokenType.IF);
+          case 'o':
+            return matchRest(src, start, TokenType.OR);
+          default:
+            return TokenType.IDENTIFIER;
+        }
+
+      case 3:
+        switch (src.charAt(start)) {
+          case 'a':
+            return matchRest(src, start, TokenType.AND);
+          case 'f':
+            return matchRest(src, start, TokenType.FOR);
+          case 'l':
+            return matchRest(src, start, TokenType.LET);
+          case 'm':
+            return matchRest(src, start, TokenType.MUT);
+          case 'n':
+            return matchRest(src, start, TokenType.NIL);
+          default:
+            return TokenType.IDENTIFIER;
+        }
+
+      case 4:
+        switch (src.charAt(start)) {
+          case 'e':
+            return matchRest(src, start, TokenType.ELSE);
+          case 's':
+            return matchRest(src, start, TokenType.THIS);
+          case 't':
+            return matchRest(src, start, TokenType.TRUE);
+          default:
+            return TokenType.IDENTIFIER;
+        }
+
+      case 5:
+        switch (src.charAt(start)) {
+          case 'b':
+            return matchRest(src, start, TokenType.BREAK);
+          case 'c':
+            return matchRest(src, start, TokenType.CLASS);
+          case 'f':
+            return matchRest(src, start, TokenType.FALSE);
+          case 's':
+            return matchRest(src, start, TokenType.SUPER);
+          case 'w':
+            return matchRest(src, start, TokenType.WHILE);
+          default:
+            return TokenType.IDENTIFIER;
+        }
+
+      case 6:
+        switch (src.charAt(start)) {
+          case 'r':
+            return matchRest(src, start, TokenType.RETURN);
+          case 's':
+            return matchRest(src, start, TokenType.STATIC);
+          default:
+            return TokenType.IDENTIFIER;
+        }
+
+      case 8:
+        return src.charAt(start) == 'c'
+            ? matchRest(src, start, TokenType.CONTINUE)
+            : TokenType.IDENTIFIER;
+
+      default:
+        return TokenType.IDENTIFIER;
+    }
   }
 
-  public static @Nullable TokenType match(String reservedWord) {
-    return KEYWORDS.get(reservedWord);
+  @SuppressWarnings("nullness")
+  private static TokenType matchRest(Source src, int start, TokenType keyword) {
+    var word = keyword.lexeme();
+
+    for (int i = 1; i < word.length(); i++) {
+      if (src.charAt(start + i) != word.charAt(i)) {
+        return TokenType.IDENTIFIER;
+      }
+    }
+
+    return keyword;
   }
 }
@@ -0,0 +1,8 @@
+package com.dylmay.jlox.lexer;
+
+import com.dylmay.jlox.assets.Token;
+
+public interface TokenStream {
+  /** Returns the next token. Once exhausted every call returns an EOF token. */
+  Token next();
+}
@@ -0,0 +1,102 @@
+package com.dylmay.jlox.lexer;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes slices of a UTF-8 byte source. Nearly every slice is plain ASCII and is copied straight
+ * into a Latin-1 string; the rest go through a strict decoder.
+ */
+final class Utf8Decoder {
+  private final CharsetDecoder decoder;
+
+  Utf8Decoder() {
+    this.decoder =
+        StandardCharsets.UTF_8
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+  }
+
+  /** Decodes the bytes, naming the source offset of the slice if they aren't valid UTF-8. */
+  String decode(byte[] bytes, int from, int length, int sourceOffset) {
+    for (int i = from; i < from + length; i++) {
+      if (bytes[i] < 0) {
+        return this.decodeStrict(bytes, from, length, sourceOffset);
+      }
+    }
+
+    return new String(bytes, from, length, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * The code point of the UTF-8 sequence at the offset of a byte source, or -1 if the bytes there
+   * don't form one.
+   */
+  static int codePointAt(Source src, int offset) {
+    int lead = src.charAt(offset);
+    var length = sequenceLength(src, offset);
+
+    if (length <= 1) return length == 1 ? lead : -1;
+
+    var codePoint = lead & (0x7F >> length);
+
+    for (int i = 1; i < length; i++) {
+      codePoint = (codePoint << 6) | (src.charAt(offset + i) & 0x3F);
+    }
+
+    return codePoint;
+  }
+
+  /** The end of the UTF-8 sequence at the offset, or just past the offset if it's malformed. */
+  static int charEnd(Source src, int offset) {
+    return offset + Math.max(1, sequenceLength(src, offset));
+  }
+
+  private static int sequenceLength(Source src, int offset) {
+    int lead = src.charAt(offset);
+
+    if (lead < 0x80) return 1;
+
+    int length;
+    int low = 0x80;
+    int high = 0xBF;
+
+    if (lead >= 0xC2 && lead <= 0xDF) {
+      length = 2;
+    } else if (lead >= 0xE0 && lead <= 0xEF) {
+      length = 3;
+      low = lead == 0xE0 ? 0xA0 : low;
+      high = lead == 0xED ? 0x9F : high;
+    } else if (lead >= 0xF0 && lead <= 0xF4) {
+      length = 4;
+      low = lead == 0xF0 ? 0x90 : low;
+      high = lead == 0xF4 ? 0x8F : high;
+    } else {
+      return 0;
+    }
+
+    for (int i = 1; i < length; i++) {
+      int next = src.charAt(offset + i);
+
+      if (next < low || next > high) return 0;
+
+      low = 0x80;
+      high = 0xBF;
+    }
+
+    return length;
+  }
+
+  private String decodeStrict(byte[] bytes, int from, int length, int sourceOffset) {
+    try {
+      return this.decoder.decode(ByteBuffer.wrap(bytes, from, length)).toString();
+    } catch (CharacterCodingException exc) {
+      throw new UncheckedIOException("Invalid UTF-8 at byte offset " + sourceOffset, exc);
+    }
+  }
+}
@@ -0,0 +1,496 @@
+package com.dylmay.jlox.optimizer;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.LazyBody;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.assets.Token;
+import com.dylmay.jlox.assets.TokenType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Replaces calls to small functions with the expression they return, so helpers such as {@code
+ * fn square(n) { return n * n; }} stop costing an environment and a thrown return per call. Runs
+ * before folding and resolution, so inlined constants are folded and the result resolved like the
+ * rest of the tree.
+ *
+ * <p>A function is inlined if it is bound by a {@code let} or {@code fn} without {@code mut} that
+ * nothing in the program assigns, and its body is a single {@code return} of an expression over
+ * its parameters, literals and operators, so it can't recurse or have an effect. A call is
+ * replaced only when each argument is a literal or a declared variable, which reads the same
+ * however many times the expression evaluates it. Substituted arguments keep the position of the
+ * parameter they replace, so errors are reported where they were before.
+ */
+public class CallInliner implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  private final Set<String> assigned;
+  private final Deque<Map<String, Expr.Fn>> scopes;
+  private boolean scanning;
+  private boolean unknownWrites;
+
+  public CallInliner() {
+    this.assigned = new HashSet<>();
+    this.scopes = new ArrayDeque<>();
+    this.scanning = false;
+    this.unknownWrites = false;
+  }
+
+  /** Finds every assigned name first, then inlines calls in a second walk. */
+  public List<Stmt> inline(List<Stmt> stmts) {
+    this.scanning = true;
+    this.inlineList(stmts);
+    this.scanning = false;
+
+    return this.inlineList(stmts);
+  }
+
+  private List<Stmt> inlineFunction(List<Token> parms, List<Stmt> body) {
+    this.scopes.push(new HashMap<>());
+
+    for (var parm : parms) {
+      this.scopes.peek().put(parm.lexeme(), null);
+    }
+
+    var result = this.inline(body);
+    this.scopes.pop();
+
+    return result;
+  }
+
+  private List<Stmt> inlineList(List<Stmt> stmts) {
+    this.scopes.push(new HashMap<>());
+
+    List<Stmt> result = null;
+
+    for (int i = 0; i < stmts.size(); i++) {
+      var stmt = stmts.get(i);
+      var rewritten = this.visit(stmt);
+
+      if (rewritten != stmt && result == null) {
+        result = new ArrayList<>(stmts.subList(0, i));
+      }
+
+      if (result != null) {
+        result.add(rewritten);
+      }
+    }
+
+    this.scopes.pop();
+
+    return result != null ? result : stmts;
+  }
+
+  private Stmt visit(Stmt stmt) {
+    return stmt.accept(this);
+  }
+
+  private Expr visit(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private @Nullable Expr visitNullable(@Nullable Expr expr) {
+    return expr != null ? this.visit(expr) : null;
+  }
+
+  private boolean isDeclared(String name) {
+    for (var scope : this.scopes) {
+      if (scope.containsKey(name)) return true;
+    }
+
+    return false;
+  }
+
+  /** The function the name is bound to if calls to it can be inlined, or null. */
+  private @Nullable Expr.Fn lookup(String name) {
+    for (var scope : this.scopes) {
+      if (scope.containsKey(name)) return scope.get(name);
+    }
+
+    return null;
+  }
+
+  @SuppressWarnings("nullness")
+  private void declare(Token name, @Nullable Expr.Fn fn) {
+    this.scopes.peek().put(name.lexeme(), fn);
+  }
+
+  /** The declared function if calls to it can be replaced by its returned expression. */
+  private @Nullable Expr.Fn inlinable(Stmt.Var stmt) {
+    if (stmt.mutable || !(stmt.initializer instanceof Expr.Fn fn)) return null;
+    if (fn.body instanceof LazyBody lazy && !lazy.isLoaded()) return null;
+    if (this.assigned.contains(stmt.name.lexeme())) return null;
+
+    // a body that wasn't parsed could assign to any top-level name
+    if (this.scopes.size() == 1 && this.unknownWrites) return null;
+
+    if (fn.body.size() != 1 || !(fn.body.get(0) instanceof Stmt.Return ret)) return null;
+
+    var parms = new HashSet<String>();
+    fn.parms.forEach(parm -> parms.add(parm.lexeme()));
+
+    return ret.value != null && isSimple(ret.value, parms) ? fn : null;
+  }
+
+  /** Whether the expression reads only the parameters and can't call or assign anything. */
+  private static boolean isSimple(Expr expr, Set<String> parms) {
+    return switch (expr.kind) {
+      case Expr.LITERAL -> true;
+      case Expr.VARIABLE -> parms.contains(((Expr.Variable) expr).name.lexeme());
+      case Expr.GROUPING -> isSimple(((Expr.Grouping) expr).expression, parms);
+      case Expr.UNARY -> isSimple(((Expr.Unary) expr).right, parms);
+      case Expr.BINARY -> {
+        var binary = (Expr.Binary) expr;
+        yield isSimple(binary.left, parms) && isSimple(binary.right, parms);
+      }
+      case Expr.LOGICAL -> {
+        var logical = (Expr.Logical) expr;
+        yield isSimple(logical.left, parms) && isSimple(logical.right, parms);
+      }
+      case Expr.TERNARY -> {
+        var ternary = (Expr.Ternary) expr;
+        yield isSimple(ternary.condition, parms)
+            && isSimple(ternary.onTrue, parms)
+            && isSimple(ternary.onFalse, parms);
+      }
+      default -> false;
+    };
+  }
+
+  /** Whether the argument can't fail or change anything, so reading it again gives the same. */
+  private boolean isTrivial(Expr arg) {
+    if (arg instanceof Expr.Literal) return true;
+
+    return arg instanceof Expr.Variable variable && this.isDeclared(variable.name.lexeme());
+  }
+
+  /** A copy of the returned expression reading the arguments in place of the parameters. */
+  @SuppressWarnings("nullness")
+  private static Expr substitute(Expr expr, Map<String, Expr> args) {
+    switch (expr.kind) {
+      case Expr.VARIABLE:
+        var parm = ((Expr.Variable) expr).name;
+        var arg = args.get(parm.lexeme());
+
+        if (arg instanceof Expr.Literal literal) {
+          return new Expr.Literal(literal.value, parm.position());
+        }
+
+        var name = ((Expr.Variable) arg).name.lexeme();
+        return new Expr.Variable(new Token(TokenType.IDENTIFIER, name, null, parm.position()));
+
+      case Expr.GROUPING:
+        return new Expr.Grouping(substitute(((Expr.Grouping) expr).expression, args));
+
+      case Expr.UNARY:
+        var unary = (Expr.Unary) expr;
+        return new Expr.Unary(unary.operator, substitute(unary.right, args));
+
+      case Expr.BINARY:
+        var binary = (Expr.Binary) expr;
+        return new Expr.Binary(
+            substitute(binary.left, args), binary.operator, substitute(binary.right, args));
+
+      case Expr.LOGICAL:
+        var logical = (Expr.Logical) expr;
+        return new Expr.Logical(
+            substitute(logical.left, args), logical.operator, substitute(logical.right, args));
+
+      case Expr.TERNARY:
+        var ternary = (Expr.Ternary) expr;
+        return new Expr.Ternary(
+            substitute(ternary.condition, args),
+            substitute(ternary.onTrue, args),
+            substitute(ternary.onFalse, args));
+
+      default:
+        return expr;
+    }
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    var left = this.visit(expr.left);
+    var right = this.visit(expr.right);
+
+    if (left == expr.left && right == expr.right) return expr;
+
+    return new Expr.Binary(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitTernaryExpr(Expr.Ternary expr) {
+    var condition = this.visit(expr.condition);
+    var onTrue = this.visit(expr.onTrue);
+    var onFalse = this.visit(expr.onFalse);
+
+    if (condition == expr.condition && onTrue == expr.onTrue && onFalse == expr.onFalse) {
+      return expr;
+    }
+
+    return new Expr.Ternary(condition, onTrue, onFalse);
+  }
+
+  @Override
+  @SuppressWarnings("nullness")
+  public Expr visitCallExpr(Expr.Call expr) {
+    var callee = this.visit(expr.callee);
+    var args = new ArrayList<Expr>(expr.args.size());
+    var changed = callee != expr.callee;
+
+    for (var arg : expr.args) {
+      var rewritten = this.visit(arg);
+      changed |= rewritten != arg;
+      args.add(rewritten);
+    }
+
+    var fn = callee instanceof Expr.Variable variable ? this.lookup(variable.name.lexeme()) : null;
+
+    if (!this.scanning
+        && fn != null
+        && fn.parms.size() == args.size()
+        && args.stream().allMatch(this::isTrivial)) {
+      var bound = new HashMap<String, Expr>();
+
+      for (int i = 0; i < args.size(); i++) {
+        bound.put(fn.parms.get(i).lexeme(), args.get(i));
+      }
+
+      return substitute(((Stmt.Return) fn.body.get(0)).value, bound);
+    }
+
+    return changed ? new Expr.Call(callee, expr.paren, args) : expr;
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    var inner = this.visit(expr.expression);
+
+    return inner == expr.expression ? expr : new Expr.Grouping(inner);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    var right = this.visit(expr.right);
+
+    return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    if (this.scanning) this.assigned.add(expr.name.lexeme());
+
+    var value = this.visit(expr.value);
+
+    return value == expr.value ? expr : new Expr.Assign(expr.name, value);
+  }
+
+  @Override
+  public Expr visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    if (this.scanning) this.assigned.add(expr.name.lexeme());
+
+    var value = this.visit(expr.value);
+
+    return value == expr.value ? expr : new Expr.CompoundAssign(expr.name, expr.operator, value);
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    var left = this.visit(expr.left);
+    var right = this.visit(expr.right);
+
+    if (left == expr.left && right == expr.right) return expr;
+
+    return new Expr.Logical(left, expr.operator, right);
+  }
+
+  /**
+   * A body that isn't parsed yet is inlined within itself once it is. It can only be a top-level
+   * function's, and nothing outside it can see its locals.
+   */
+  @Override
+  public Expr visitFnExpr(Expr.Fn expr) {
+    if (expr.body instanceof LazyBody lazy && !lazy.isLoaded()) {
+      if (this.scanning) {
+        this.unknownWrites = true;
+      } else {
+        lazy.andThen(stmts -> new CallInliner().inlineFunction(expr.parms, stmts));
+      }
+
+      return expr;
+    }
+
+    this.scopes.push(new HashMap<>());
+
+    for (var parm : expr.parms) {
+      this.scopes.peek().put(parm.lexeme(), null);
+    }
+
+    var body = this.inlineList(expr.body);
+    this.scopes.pop();
+
+    return body == expr.body ? expr : new Expr.Fn(expr.pos, expr.parms, body);
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    var object = this.visit(expr.object);
+
+    return object == expr.object ? expr : new Expr.Get(object, expr.name);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    var object = this.visit(expr.object);
+    var value = this.visit(expr.value);
+
+    if (object == expr.object && value == expr.value) return expr;
+
+    return new Expr.Set(object, expr.name, value);
+  }
+
+  @Override
+  public Expr visitCompoundSetExpr(Expr.CompoundSet expr) {
+    var object = this.visit(expr.object);
+    var value = this.visit(expr.value);
+
+    if (object == expr.object && value == expr.value) return expr;
+
+    return new Expr.CompoundSet(object, expr.name, expr.operator, value);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    var expr = this.visit(stmt.expr);
+
+    return expr == stmt.expr ? stmt : new Stmt.Expression(expr);
+  }
+
+  /** The name is declared before its initializer is visited, as the resolver does. */
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    this.declare(stmt.name, null);
+
+    var initializer = this.visitNullable(stmt.initializer);
+    var result =
+        initializer == stmt.initializer
+            ? stmt
+            : new Stmt.Var(stmt.name, initializer, stmt.mutable, stmt.isStatic);
+
+    this.declare(stmt.name, this.scanning ? null : this.inlinable(result));
+
+    return result;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    var stmts = this.inlineList(stmt.stmts);
+
+    return stmts == stmt.stmts ? stmt : new Stmt.Block(stmts);
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    var condition = this.visit(stmt.condition);
+    var thenBranch = this.visit(stmt.thenBranch);
+    var elseBranch = stmt.elseBranch != null ? this.visit(stmt.elseBranch) : null;
+
+    if (condition == stmt.condition
+        && thenBranch == stmt.thenBranch
+        && elseBranch == stmt.elseBranch) {
+      return stmt;
+    }
+
+    return new Stmt.If(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    var value = this.visitNullable(stmt.value);
+
+    return value == stmt.value ? stmt : new Stmt.Return(stmt.keyword, value);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    var condition = this.visit(stmt.condition);
+    var body = this.visit(stmt.body);
+
+    if (condition == stmt.condition && body == stmt.body) return stmt;
+
+    return new Stmt.While(condition, body);
+  }
+
+  @Override
+  public Stmt visitForStmt(Stmt.For stmt) {
+    this.scopes.push(new HashMap<>());
+
+    var initializer = stmt.initializer != null ? this.visit(stmt.initializer) : null;
+    var condition = this.visit(stmt.condition);
+    var body = this.inlineList(stmt.body);
+    var increment = this.visitNullable(stmt.increment);
+
+    this.scopes.pop();
+
+    if (initializer == stmt.initializer
+        && condition == stmt.condition
+        && increment == stmt.increment
+        && body == stmt.body) {
+      return stmt;
+    }
+
+    return new Stmt.For(initializer, condition, increment, body, stmt.bodyScoped);
+  }
+
+  @Override
+  public Stmt visitBreakStmt(Stmt.Break stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitContinueStmt(Stmt.Continue stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    this.declare(stmt.name, null);
+
+    var decls = new ArrayList<Stmt.Var>(stmt.decls.size());
+    var changed = false;
+
+    // methods are visited as functions only, as fields and methods aren't names in scope
+    for (var decl : stmt.decls) {
+      var initializer = decl.initializer instanceof Expr.Fn fn ? this.visit(fn) : null;
+      var rewritten =
+          initializer != null && initializer != decl.initializer
+              ? new Stmt.Var(decl.name, initializer, decl.mutable, decl.isStatic)
+              : decl;
+
+      changed |= rewritten != decl;
+      decls.add(rewritten);
+    }
+
+    return changed ? new Stmt.Class(stmt.name, decls, stmt.superclass) : stmt;
+  }
+}
@@ -0,0 +1,383 @@
+package com.dylmay.jlox.optimizer;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.LazyBody;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.assets.TokenType;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Folds constant subtrees into literals before resolution, computing them the way the interpreter
+ * would. Anything the interpreter would reject is left in place so the error still happens at
+ * runtime. Nodes with nothing to fold are returned as they are.
+ */
+public class ConstantFolder implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  private static final Object NOT_CONSTANT = new Object();
+
+  public List<Stmt> fold(List<Stmt> stmts) {
+    List<Stmt> folded = null;
+
+    for (int i = 0; i < stmts.size(); i++) {
+      var stmt = stmts.get(i);
+      var result = this.fold(stmt);
+
+      if (result != stmt && folded == null) {
+        folded = new ArrayList<>(stmts.subList(0, i));
+      }
+
+      if (folded != null) {
+        folded.add(result);
+      }
+    }
+
+    return folded != null ? folded : stmts;
+  }
+
+  private Stmt fold(Stmt stmt) {
+    return stmt.accept(this);
+  }
+
+  private Expr fold(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private @Nullable Stmt foldNullable(@Nullable Stmt stmt) {
+    return stmt != null ? this.fold(stmt) : null;
+  }
+
+  private @Nullable Expr foldNullable(@Nullable Expr expr) {
+    return expr != null ? this.fold(expr) : null;
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    var left = this.fold(expr.left);
+    var right = this.fold(expr.right);
+    var type = expr.operator.type();
+
+    if (left instanceof Expr.Literal l && right instanceof Expr.Literal r) {
+      var value = this.combine(l.value, type, r.value);
+
+      if (value != NOT_CONSTANT) {
+        return new Expr.Literal(value, expr.operator.position());
+      }
+    }
+
+    // x + 0 is not x when x is -0, so only identities that hold for every double are used
+    if ((type == TokenType.STAR || type == TokenType.SLASH) && isNumber(right, 1d)) {
+      if (isNumeric(left)) return left;
+    } else if (type == TokenType.STAR && isNumber(left, 1d)) {
+      if (isNumeric(right)) return right;
+    } else if (type == TokenType.MINUS && isNumber(right, 0d)) {
+      if (isNumeric(left)) return left;
+    }
+
+    if (left == expr.left && right == expr.right) return expr;
+
+    return new Expr.Binary(left, expr.operator, right);
+  }
+
+  private Object combine(@Nullable Object left, TokenType type, @Nullable Object right) {
+    if (left instanceof Double l && right instanceof Double r) {
+      return switch (type) {
+        case MINUS -> l - r;
+        case SLASH -> l / r;
+        case PLUS -> l + r;
+        case STAR -> l * r;
+        case GREATER -> l > r;
+        case GREATER_EQUAL -> l >= r;
+        case LESS -> l < r;
+        case LESS_EQUAL -> l <= r;
+        case BANG_EQUAL -> !l.equals(r);
+        case EQUAL_EQUAL -> l.equals(r);
+        default -> NOT_CONSTANT;
+      };
+    }
+
+    if (type == TokenType.PLUS && left instanceof String l && right instanceof String r) {
+      return l + r;
+    }
+
+    return NOT_CONSTANT;
+  }
+
+  private static boolean isNumber(Expr expr, double value) {
+    return expr instanceof Expr.Literal literal
+        && literal.value instanceof Double number
+        && number.equals(value);
+  }
+
+  /** Whether the expression can only produce a number, if it produces anything at all. */
+  private static boolean isNumeric(Expr expr) {
+    if (expr instanceof Expr.Literal literal) return literal.value instanceof Double;
+    if (expr instanceof Expr.Grouping grouping) return isNumeric(grouping.expression);
+    if (expr instanceof Expr.Unary unary) return unary.operator.type() == TokenType.MINUS;
+
+    if (expr instanceof Expr.Binary binary) {
+      var type = binary.operator.type();
+      return type == TokenType.MINUS || type == TokenType.STAR || type == TokenType.SLASH;
+    }
+
+    return false;
+  }
+
+  private static boolean isTruthy(@Nullable Object value) {
+    if (value == null) return false;
+    if (value instanceof Boolean b) return b;
+
+    return true;
+  }
+
+  @Override
+  public Expr visitTernaryExpr(Expr.Ternary expr) {
+    var condition = this.fold(expr.condition);
+    var onTrue = this.fold(expr.onTrue);
+    var onFalse = this.fold(expr.onFalse);
+
+    if (condition instanceof Expr.Literal literal
+        && (literal.value instanceof Boolean || literal.value instanceof Double)) {
+      return Boolean.TRUE.equals(literal.value) ? onTrue : onFalse;
+    }
+
+    if (condition == expr.condition && onTrue == expr.onTrue && onFalse == expr.onFalse) {
+      return expr;
+    }
+
+    return new Expr.Ternary(condition, onTrue, onFalse);
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    var callee = this.fold(expr.callee);
+    var args = new ArrayList<Expr>(expr.args.size());
+    var changed = callee != expr.callee;
+
+    for (var arg : expr.args) {
+      var folded = this.fold(arg);
+      changed |= folded != arg;
+      args.add(folded);
+    }
+
+    return changed ? new Expr.Call(callee, expr.paren, args) : expr;
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    var inner = this.fold(expr.expression);
+
+    if (inner instanceof Expr.Literal) return inner;
+
+    return inner == expr.expression ? expr : new Expr.Grouping(inner);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    var right = this.fold(expr.right);
+
+    if (right instanceof Expr.Literal literal) {
+      var pos = expr.operator.position();
+
+      switch (expr.operator.type()) {
+        case BANG:
+          return new Expr.Literal(!isTruthy(literal.value), pos);
+
+        case MINUS:
+          if (literal.value instanceof Double number) {
+            return new Expr.Literal(-number, pos);
+          }
+          break;
+
+        case PLUS:
+          return new Expr.Literal(literal.value, pos);
+
+        default:
+          break;
+      }
+    }
+
+    return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    var value = this.fold(expr.value);
+
+    return value == expr.value ? expr : new Expr.Assign(expr.name, value);
+  }
+
+  @Override
+  public Expr visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    var value = this.fold(expr.value);
+
+    return value == expr.value ? expr : new Expr.CompoundAssign(expr.name, expr.operator, value);
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    var left = this.fold(expr.left);
+    var right = this.fold(expr.right);
+
+    if (left instanceof Expr.Literal literal) {
+      var truthy = isTruthy(literal.value);
+
+      return (expr.operator.type() == TokenType.OR) == truthy ? left : right;
+    }
+
+    if (left == expr.left && right == expr.right) return expr;
+
+    return new Expr.Logical(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitFnExpr(Expr.Fn expr) {
+    if (expr.body instanceof LazyBody lazy && !lazy.isLoaded()) {
+      lazy.andThen(this::fold);
+      return expr;
+    }
+
+    var body = this.fold(expr.body);
+
+    return body == expr.body ? expr : new Expr.Fn(expr.pos, expr.parms, body);
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    var object = this.fold(expr.object);
+
+    return object == expr.object ? expr : new Expr.Get(object, expr.name);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    var object = this.fold(expr.object);
+    var value = this.fold(expr.value);
+
+    if (object == expr.object && value == expr.value) return expr;
+
+    return new Expr.Set(object, expr.name, value);
+  }
+
+  @Override
+  public Expr visitCompoundSetExpr(Expr.CompoundSet expr) {
+    var object = this.fold(expr.object);
+    var value = this.fold(expr.value);
+
+    if (object == expr.object && value == expr.value) return expr;
+
+    return new Expr.CompoundSet(object, expr.name, expr.operator, value);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    var expr = this.fold(stmt.expr);
+
+    return expr == stmt.expr ? stmt : new Stmt.Expression(expr);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    var initializer = this.foldNullable(stmt.initializer);
+
+    if (initializer == stmt.initializer) return stmt;
+
+    return new Stmt.Var(stmt.name, initializer, stmt.mutable, stmt.isStatic);
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    var stmts = this.fold(stmt.stmts);
+
+    return stmts == stmt.stmts ? stmt : new Stmt.Block(stmts);
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    var condition = this.fold(stmt.condition);
+    var thenBranch = this.fold(stmt.thenBranch);
+    var elseBranch = this.foldNullable(stmt.elseBranch);
+
+    if (condition == stmt.condition
+        && thenBranch == stmt.thenBranch
+        && elseBranch == stmt.elseBranch) {
+      return stmt;
+    }
+
+    return new Stmt.If(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    var value = this.foldNullable(stmt.value);
+
+    return value == stmt.value ? stmt : new Stmt.Return(stmt.keyword, value);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    var condition = this.fold(stmt.condition);
+    var body = this.fold(stmt.body);
+
+    if (condition == stmt.condition && body == stmt.body) return stmt;
+
+    return new Stmt.While(condition, body);
+  }
+
+  @Override
+  public Stmt visitForStmt(Stmt.For stmt) {
+    var initializer = this.foldNullable(stmt.initializer);
+    var condition = this.fold(stmt.condition);
+    var increment = this.foldNullable(stmt.increment);
+    var body = this.fold(stmt.body);
+
+    if (initializer == stmt.initializer
+        && condition == stmt.condition
+        && increment == stmt.increment
+        && body == stmt.body) {
+      return stmt;
+    }
+
+    return new Stmt.For(initializer, condition, increment, body, stmt.bodyScoped);
+  }
+
+  @Override
+  public Stmt visitBreakStmt(Stmt.Break stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitContinueStmt(Stmt.Continue stmt) {
+    return stmt;
+  }
+
+  /** Only methods are folded, as fields must stay the literals the interpreter accepts. */
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    var decls = new ArrayList<Stmt.Var>(stmt.decls.size());
+    var changed = false;
+
+    for (var decl : stmt.decls) {
+      var folded = decl.initializer instanceof Expr.Fn ? (Stmt.Var) this.fold(decl) : decl;
+      changed |= folded != decl;
+      decls.add(folded);
+    }
+
+    return changed ? new Stmt.Class(stmt.name, decls, stmt.superclass) : stmt;
+  }
+}
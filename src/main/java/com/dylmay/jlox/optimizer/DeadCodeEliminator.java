@@ -0,0 +1,487 @@
+package com.dylmay.jlox.optimizer;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.LazyBody;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.assets.Token;
+import com.dylmay.jlox.assets.TokenType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Removes code that can never run or whose result is never read, after resolution. Statements
+ * after a {@code return}, {@code break} or {@code continue} are dropped, as are the branches of
+ * an {@code if} or {@code while} whose condition is a literal, and local {@code let} bindings that
+ * are never referenced and whose initializer can neither fail nor have an effect.
+ *
+ * <p>Scopes are never added or removed, so the depths and slots the resolver set stay right; a
+ * dropped binding just leaves its slot unused. Top-level bindings are always kept, since later
+ * input and lazily parsed bodies can still read them by name. A binding is only treated as unused
+ * if no name it could be shadowing is used either.
+ */
+public class DeadCodeEliminator implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  /** Told about each removal, with where it happened and what was removed. */
+  public interface Listener {
+    void removed(int position, String description);
+  }
+
+  private final Listener listener;
+  private final Deque<Set<String>> used;
+
+  public DeadCodeEliminator() {
+    this((position, description) -> {});
+  }
+
+  public DeadCodeEliminator(Listener listener) {
+    this.listener = listener;
+    this.used = new ArrayDeque<>();
+  }
+
+  /** Prunes top-level statements, keeping every binding they declare. */
+  public List<Stmt> prune(List<Stmt> stmts) {
+    this.used.push(new HashSet<>());
+    var pruned = this.pruneList(stmts);
+    this.used.pop();
+
+    return pruned;
+  }
+
+  /** Prunes the statements of a local scope, also dropping the bindings nothing in it reads. */
+  private List<Stmt> pruneScope(List<Stmt> stmts) {
+    this.used.push(new HashSet<>());
+    var pruned = this.pruneList(stmts);
+    var names = this.used.pop();
+
+    if (!this.used.isEmpty()) {
+      this.used.peek().addAll(names);
+    }
+
+    List<Stmt> kept = null;
+
+    for (int i = 0; i < pruned.size(); i++) {
+      var stmt = pruned.get(i);
+      var unused =
+          stmt instanceof Stmt.Var var
+              && !names.contains(var.name.lexeme())
+              && (var.initializer == null || isPure(var.initializer));
+
+      if (unused && kept == null) {
+        kept = new ArrayList<>(pruned.subList(0, i));
+      }
+
+      if (unused) {
+        var name = ((Stmt.Var) stmt).name;
+        this.listener.removed(name.position(), "unused binding '" + name.lexeme() + "'");
+      } else if (kept != null) {
+        kept.add(stmt);
+      }
+    }
+
+    return kept != null ? kept : pruned;
+  }
+
+  private List<Stmt> pruneList(List<Stmt> stmts) {
+    List<Stmt> pruned = null;
+
+    for (int i = 0; i < stmts.size(); i++) {
+      var stmt = stmts.get(i);
+      var result = this.prune(stmt);
+
+      if (result != stmt && pruned == null) {
+        pruned = new ArrayList<>(stmts.subList(0, i));
+      }
+
+      if (pruned != null && result != null) {
+        pruned.add(result);
+      }
+
+      var exit = result != null ? exit(result) : null;
+
+      if (exit != null && i + 1 < stmts.size()) {
+        var count = stmts.size() - i - 1;
+        this.listener.removed(
+            exit.position(),
+            count + " unreachable statement" + (count == 1 ? "" : "s") + " after '"
+                + exit.lexeme() + "'");
+
+        return pruned != null ? pruned : new ArrayList<>(stmts.subList(0, i + 1));
+      }
+    }
+
+    return pruned != null ? pruned : stmts;
+  }
+
+  /** The keyword of the jump the statement always ends in, or null if it can complete. */
+  private static @Nullable Token exit(Stmt stmt) {
+    if (stmt instanceof Stmt.Return ret) return ret.keyword;
+    if (stmt instanceof Stmt.Break brk) return brk.keyword;
+    if (stmt instanceof Stmt.Continue cont) return cont.keyword;
+
+    if (stmt instanceof Stmt.Block block && !block.stmts.isEmpty()) {
+      return exit(block.stmts.get(block.stmts.size() - 1));
+    }
+
+    if (stmt instanceof Stmt.If branch && branch.elseBranch != null) {
+      var onTrue = exit(branch.thenBranch);
+
+      return onTrue != null && exit(branch.elseBranch) != null ? onTrue : null;
+    }
+
+    return null;
+  }
+
+  /** Whether evaluating the expression can neither fail nor change anything. */
+  private static boolean isPure(Expr expr) {
+    return switch (expr.kind) {
+      case Expr.LITERAL, Expr.FN, Expr.THIS -> true;
+      case Expr.VARIABLE -> ((Expr.Variable) expr).depth >= 0;
+      case Expr.GROUPING -> isPure(((Expr.Grouping) expr).expression);
+      case Expr.UNARY -> {
+        var unary = (Expr.Unary) expr;
+        yield unary.operator.type() == TokenType.BANG && isPure(unary.right);
+      }
+      case Expr.LOGICAL -> {
+        var logical = (Expr.Logical) expr;
+        yield isPure(logical.left) && isPure(logical.right);
+      }
+      case Expr.TERNARY -> {
+        var ternary = (Expr.Ternary) expr;
+        yield isPure(ternary.condition) && isPure(ternary.onTrue) && isPure(ternary.onFalse);
+      }
+      default -> false;
+    };
+  }
+
+  private static boolean isTruthy(@Nullable Object value) {
+    if (value == null) return false;
+    if (value instanceof Boolean b) return b;
+
+    return true;
+  }
+
+  private @Nullable Stmt prune(Stmt stmt) {
+    return stmt.accept(this);
+  }
+
+  private Expr prune(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private @Nullable Expr pruneNullable(@Nullable Expr expr) {
+    return expr != null ? this.prune(expr) : null;
+  }
+
+  private void use(Token name) {
+    if (!this.used.isEmpty()) {
+      this.used.peek().add(name.lexeme());
+    }
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    var left = this.prune(expr.left);
+    var right = this.prune(expr.right);
+
+    if (left == expr.left && right == expr.right) return expr;
+
+    return new Expr.Binary(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitTernaryExpr(Expr.Ternary expr) {
+    var condition = this.prune(expr.condition);
+    var onTrue = this.prune(expr.onTrue);
+    var onFalse = this.prune(expr.onFalse);
+
+    if (condition == expr.condition && onTrue == expr.onTrue && onFalse == expr.onFalse) {
+      return expr;
+    }
+
+    return new Expr.Ternary(condition, onTrue, onFalse);
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    var callee = this.prune(expr.callee);
+    var args = new ArrayList<Expr>(expr.args.size());
+    var changed = callee != expr.callee;
+
+    for (var arg : expr.args) {
+      var pruned = this.prune(arg);
+      changed |= pruned != arg;
+      args.add(pruned);
+    }
+
+    return changed ? new Expr.Call(callee, expr.paren, args) : expr;
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    var inner = this.prune(expr.expression);
+
+    return inner == expr.expression ? expr : new Expr.Grouping(inner);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    var right = this.prune(expr.right);
+
+    return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    this.use(expr.name);
+
+    return expr;
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    this.use(expr.name);
+    var value = this.prune(expr.value);
+
+    if (value == expr.value) return expr;
+
+    var pruned = new Expr.Assign(expr.name, value);
+    pruned.depth = expr.depth;
+    pruned.slot = expr.slot;
+
+    return pruned;
+  }
+
+  @Override
+  public Expr visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    this.use(expr.name);
+    var value = this.prune(expr.value);
+
+    if (value == expr.value) return expr;
+
+    var pruned = new Expr.CompoundAssign(expr.name, expr.operator, value);
+    pruned.depth = expr.depth;
+    pruned.slot = expr.slot;
+
+    return pruned;
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    var left = this.prune(expr.left);
+    var right = this.prune(expr.right);
+
+    if (left == expr.left && right == expr.right) return expr;
+
+    return new Expr.Logical(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitFnExpr(Expr.Fn expr) {
+    if (expr.body instanceof LazyBody lazy && !lazy.isLoaded()) {
+      // only top-level functions are lazy, and nothing outside them can see their locals
+      lazy.andThen(stmts -> new DeadCodeEliminator(this.listener).pruneScope(stmts));
+      return expr;
+    }
+
+    var body = this.pruneScope(expr.body);
+
+    if (body == expr.body) return expr;
+
+    var pruned = new Expr.Fn(expr.pos, expr.parms, body);
+    pruned.slots = expr.slots;
+
+    return pruned;
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    var object = this.prune(expr.object);
+
+    return object == expr.object ? expr : new Expr.Get(object, expr.name);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    var object = this.prune(expr.object);
+    var value = this.prune(expr.value);
+
+    if (object == expr.object && value == expr.value) return expr;
+
+    return new Expr.Set(object, expr.name, value);
+  }
+
+  @Override
+  public Expr visitCompoundSetExpr(Expr.CompoundSet expr) {
+    var object = this.prune(expr.object);
+    var value = this.prune(expr.value);
+
+    if (object == expr.object && value == expr.value) return expr;
+
+    return new Expr.CompoundSet(object, expr.name, expr.operator, value);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    var expr = this.prune(stmt.expr);
+
+    return expr == stmt.expr ? stmt : new Stmt.Expression(expr);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    var initializer = this.pruneNullable(stmt.initializer);
+
+    if (initializer == stmt.initializer) return stmt;
+
+    var pruned = new Stmt.Var(stmt.name, initializer, stmt.mutable, stmt.isStatic);
+    pruned.slot = stmt.slot;
+
+    return pruned;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    var stmts = this.pruneScope(stmt.stmts);
+
+    if (stmts == stmt.stmts) return stmt;
+
+    var pruned = new Stmt.Block(stmts);
+    pruned.slots = stmt.slots;
+
+    return pruned;
+  }
+
+  /** An if on a literal becomes the branch it takes, which keeps its own scope as a block. */
+  @Override
+  public @Nullable Stmt visitIfStmt(Stmt.If stmt) {
+    if (stmt.condition instanceof Expr.Literal literal) {
+      var taken = isTruthy(literal.value) ? stmt.thenBranch : stmt.elseBranch;
+      this.listener.removed(literal.pos, "branch on constant condition");
+
+      return taken != null ? this.prune(taken) : null;
+    }
+
+    var condition = this.prune(stmt.condition);
+    var thenBranch = this.prune(stmt.thenBranch);
+    var elseBranch = stmt.elseBranch != null ? this.prune(stmt.elseBranch) : null;
+
+    if (thenBranch == null) {
+      // a then branch is always a block, so this only guards the types
+      return stmt;
+    }
+
+    if (condition == stmt.condition
+        && thenBranch == stmt.thenBranch
+        && elseBranch == stmt.elseBranch) {
+      return stmt;
+    }
+
+    return new Stmt.If(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    var value = this.pruneNullable(stmt.value);
+
+    return value == stmt.value ? stmt : new Stmt.Return(stmt.keyword, value);
+  }
+
+  @Override
+  public @Nullable Stmt visitWhileStmt(Stmt.While stmt) {
+    if (stmt.condition instanceof Expr.Literal literal && !isTruthy(literal.value)) {
+      this.listener.removed(literal.pos, "loop that never runs");
+      return null;
+    }
+
+    var condition = this.prune(stmt.condition);
+    var body = this.prune(stmt.body);
+
+    if (body == null || (condition == stmt.condition && body == stmt.body)) return stmt;
+
+    return new Stmt.While(condition, body);
+  }
+
+  /** The loop's own scope is kept whatever is dropped from it, as the depths count it. */
+  @Override
+  public @Nullable Stmt visitForStmt(Stmt.For stmt) {
+    if (stmt.initializer == null
+        && stmt.condition instanceof Expr.Literal literal
+        && !isTruthy(literal.value)) {
+      this.listener.removed(literal.pos, "loop that never runs");
+      return null;
+    }
+
+    this.used.push(new HashSet<>());
+
+    var initializer = stmt.initializer != null ? this.prune(stmt.initializer) : null;
+    var condition = this.prune(stmt.condition);
+    var increment = this.pruneNullable(stmt.increment);
+    var body = this.pruneScope(stmt.body);
+    var names = this.used.pop();
+
+    if (!this.used.isEmpty()) {
+      this.used.peek().addAll(names);
+    }
+
+    if (initializer == stmt.initializer
+        && condition == stmt.condition
+        && increment == stmt.increment
+        && body == stmt.body) {
+      return stmt;
+    }
+
+    var pruned = new Stmt.For(initializer, condition, increment, body, stmt.bodyScoped);
+    pruned.slots = stmt.slots;
+    pruned.bodySlots = stmt.bodySlots;
+
+    return pruned;
+  }
+
+  @Override
+  public Stmt visitBreakStmt(Stmt.Break stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitContinueStmt(Stmt.Continue stmt) {
+    return stmt;
+  }
+
+  /** Only method bodies are pruned; fields are literals and always kept. */
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    if (stmt.superclass != null) {
+      this.use(stmt.superclass.name);
+    }
+
+    var decls = new ArrayList<Stmt.Var>(stmt.decls.size());
+    var changed = false;
+
+    for (var decl : stmt.decls) {
+      var pruned = decl.initializer instanceof Expr.Fn ? (Stmt.Var) this.prune(decl) : decl;
+      changed |= pruned != decl;
+      decls.add(pruned);
+    }
+
+    if (!changed) return stmt;
+
+    var pruned = new Stmt.Class(stmt.name, decls, stmt.superclass);
+    pruned.slot = stmt.slot;
+
+    return pruned;
+  }
+}
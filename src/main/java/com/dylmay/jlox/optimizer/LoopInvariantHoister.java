@@ -0,0 +1,946 @@
+package com.dylmay.jlox.optimizer;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.LazyBody;
+import com.dylmay.jlox.assets.Position;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.assets.Token;
+import com.dylmay.jlox.assets.TokenType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Moves expressions that give the same value on every iteration of a loop in front of it, into a
+ * local the loop reads instead. Identical expressions in a loop share one local. Runs before
+ * resolution, so the new locals are resolved like any other.
+ *
+ * <p>An expression is moved only if it reads nothing but literals and locals of the enclosing
+ * function that the loop doesn't write, and can't fail or have an effect, as it may now run when
+ * the loop body wouldn't have. Most operators throw unless given numbers, so each function is
+ * first scanned for the locals that only ever hold numbers or booleans. Locals assigned from
+ * nested functions are never treated as invariant, as any call in the loop could change them.
+ * Loops at the top level are left alone, since any call can reassign a global.
+ */
+public class LoopInvariantHoister implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  private enum Type {
+    NUMBER,
+    BOOLEAN,
+    ANY,
+  }
+
+  private final List<Stmt> hoisted;
+  private @Nullable Function function;
+  private @Nullable Loop loop;
+  private int nextTemp;
+
+  public LoopInvariantHoister() {
+    this.hoisted = new ArrayList<>();
+    this.function = null;
+    this.loop = null;
+    this.nextTemp = 0;
+  }
+
+  public List<Stmt> hoist(List<Stmt> stmts) {
+    return this.hoistList(stmts);
+  }
+
+  /** Rewrites the statements, putting what a loop among them hoisted just before it. */
+  @SuppressWarnings("nullness")
+  private List<Stmt> hoistList(List<Stmt> stmts) {
+    if (this.function != null) this.function.scopes.push(new HashSet<>());
+
+    List<Stmt> result = null;
+
+    for (int i = 0; i < stmts.size(); i++) {
+      var stmt = stmts.get(i);
+      var rewritten = this.visit(stmt);
+
+      if ((rewritten != stmt || !this.hoisted.isEmpty()) && result == null) {
+        result = new ArrayList<>(stmts.subList(0, i));
+      }
+
+      if (result != null) {
+        result.addAll(this.hoisted);
+        result.add(rewritten);
+      }
+
+      this.hoisted.clear();
+
+      if (this.function != null) {
+        if (stmt instanceof Stmt.Var var) this.function.scopes.peek().add(var.name.lexeme());
+        if (stmt instanceof Stmt.Class cls) this.function.scopes.peek().add(cls.name.lexeme());
+      }
+    }
+
+    if (this.function != null) this.function.scopes.pop();
+
+    return result != null ? result : stmts;
+  }
+
+  private List<Stmt> hoistFunction(List<Token> parms, List<Stmt> body) {
+    var outerFunction = this.function;
+    var outerLoop = this.loop;
+
+    this.function = new Function(parms, body);
+    this.loop = null;
+
+    var result = this.hoistList(body);
+
+    this.function = outerFunction;
+    this.loop = outerLoop;
+
+    return result;
+  }
+
+  /** Rewrites the invariant expressions of a loop whose inner loops are already done. */
+  @SuppressWarnings("nullness")
+  private Stmt hoistOut(Stmt stmt) {
+    var writes = new Writes();
+    stmt.accept(writes);
+
+    var invariant = new HashSet<String>();
+    this.function.scopes.forEach(invariant::addAll);
+    invariant.removeAll(writes.defs.keySet());
+    invariant.removeAll(this.function.captured);
+
+    if (invariant.isEmpty()) return stmt;
+
+    this.loop = new Loop(invariant);
+    var result = this.visit(stmt);
+
+    this.hoisted.addAll(this.loop.temps.values());
+    this.loop = null;
+
+    return result;
+  }
+
+  private Stmt visit(Stmt stmt) {
+    return stmt.accept(this);
+  }
+
+  @SuppressWarnings("nullness")
+  private Expr visit(Expr expr) {
+    if (this.loop != null && isWorthHoisting(expr) && this.typeInLoop(expr) != null) {
+      return this.loop.temp(expr);
+    }
+
+    return expr.accept(this);
+  }
+
+  private @Nullable Expr visitNullable(@Nullable Expr expr) {
+    return expr != null ? this.visit(expr) : null;
+  }
+
+  /** Whether reading a local is cheaper than evaluating the expression. */
+  private static boolean isWorthHoisting(Expr expr) {
+    return switch (expr.kind) {
+      case Expr.BINARY, Expr.LOGICAL, Expr.TERNARY -> true;
+      case Expr.GROUPING -> isWorthHoisting(((Expr.Grouping) expr).expression);
+      case Expr.UNARY -> isWorthHoisting(((Expr.Unary) expr).right);
+      default -> false;
+    };
+  }
+
+  /** The type of an expression that can be hoisted out of the current loop, or null. */
+  @SuppressWarnings("nullness")
+  private @Nullable Type typeInLoop(Expr expr) {
+    switch (expr.kind) {
+      case Expr.LITERAL:
+        return typeOf(((Expr.Literal) expr).value);
+
+      case Expr.VARIABLE:
+        var name = ((Expr.Variable) expr).name.lexeme();
+
+        if (!this.loop.invariant.contains(name)) return null;
+
+        var type = this.function.types.get(name);
+        return type != null ? type : Type.ANY;
+
+      case Expr.GROUPING:
+        return this.typeInLoop(((Expr.Grouping) expr).expression);
+
+      case Expr.UNARY:
+        var unary = (Expr.Unary) expr;
+        var right = this.typeInLoop(unary.right);
+
+        if (right == null) return null;
+
+        return switch (unary.operator.type()) {
+          case BANG -> Type.BOOLEAN;
+          case MINUS -> right == Type.NUMBER ? Type.NUMBER : null;
+          case PLUS -> right;
+          default -> null;
+        };
+
+      case Expr.BINARY:
+        var binary = (Expr.Binary) expr;
+        var l = this.typeInLoop(binary.left);
+        var r = this.typeInLoop(binary.right);
+
+        if (l == null || r == null) return null;
+        if (binary.operator.type() == TokenType.COMMA) return r;
+        if (l != Type.NUMBER || r != Type.NUMBER) return null;
+
+        return binaryType(binary.operator.type());
+
+      case Expr.LOGICAL:
+        var logical = (Expr.Logical) expr;
+        var left = this.typeInLoop(logical.left);
+        var rightSide = this.typeInLoop(logical.right);
+
+        return left != null && rightSide != null ? join(left, rightSide) : null;
+
+      case Expr.TERNARY:
+        var ternary = (Expr.Ternary) expr;
+        var condition = this.typeInLoop(ternary.condition);
+        var onTrue = this.typeInLoop(ternary.onTrue);
+        var onFalse = this.typeInLoop(ternary.onFalse);
+
+        // any other condition makes the interpreter throw
+        if (condition == null || condition == Type.ANY) return null;
+
+        return onTrue != null && onFalse != null ? join(onTrue, onFalse) : null;
+
+      default:
+        return null;
+    }
+  }
+
+  /** The type numbers give under the operator, or null if it doesn't take them. */
+  private static @Nullable Type binaryType(TokenType operator) {
+    return switch (operator) {
+      case MINUS, SLASH, STAR, PLUS -> Type.NUMBER;
+      case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, BANG_EQUAL, EQUAL_EQUAL -> Type.BOOLEAN;
+      default -> null;
+    };
+  }
+
+  private static Type typeOf(@Nullable Object value) {
+    if (value instanceof Double) return Type.NUMBER;
+    if (value instanceof Boolean) return Type.BOOLEAN;
+
+    return Type.ANY;
+  }
+
+  private static @Nullable Type join(@Nullable Type a, @Nullable Type b) {
+    if (a == null) return b;
+    if (b == null || a == b) return a;
+
+    return Type.ANY;
+  }
+
+  /** A stable description of a hoistable expression, equal for expressions that are the same. */
+  private static String key(Expr expr) {
+    return switch (expr.kind) {
+      case Expr.LITERAL -> {
+        var value = ((Expr.Literal) expr).value;
+        var text = String.valueOf(value);
+        yield (value != null ? value.getClass().getSimpleName() : "nil") + text.length() + text;
+      }
+      case Expr.VARIABLE -> ((Expr.Variable) expr).name.lexeme();
+      case Expr.GROUPING -> key(((Expr.Grouping) expr).expression);
+      case Expr.UNARY -> {
+        var unary = (Expr.Unary) expr;
+        yield "(" + unary.operator.type() + " " + key(unary.right) + ")";
+      }
+      case Expr.BINARY -> {
+        var binary = (Expr.Binary) expr;
+        yield "(" + binary.operator.type() + " " + key(binary.left) + " " + key(binary.right) + ")";
+      }
+      case Expr.LOGICAL -> {
+        var logical = (Expr.Logical) expr;
+        yield "(" + logical.operator.type() + " " + key(logical.left) + " "
+            + key(logical.right) + ")";
+      }
+      case Expr.TERNARY -> {
+        var ternary = (Expr.Ternary) expr;
+        yield "(? " + key(ternary.condition) + " " + key(ternary.onTrue) + " "
+            + key(ternary.onFalse) + ")";
+      }
+      default -> throw new IllegalArgumentException("Not a hoistable expression");
+    };
+  }
+
+  /** Where the interpreter would say the expression's value came from. */
+  private static int position(Expr expr) {
+    return switch (expr.kind) {
+      case Expr.LITERAL -> ((Expr.Literal) expr).pos;
+      case Expr.VARIABLE -> ((Expr.Variable) expr).name.position();
+      case Expr.GROUPING -> position(((Expr.Grouping) expr).expression);
+      case Expr.UNARY -> ((Expr.Unary) expr).operator.position();
+      case Expr.BINARY -> ((Expr.Binary) expr).operator.position();
+      case Expr.LOGICAL -> ((Expr.Logical) expr).operator.position();
+      case Expr.TERNARY -> position(((Expr.Ternary) expr).onTrue);
+      default -> Position.NO_POSITION;
+    };
+  }
+
+  private static boolean declaresAny(List<Stmt> stmts) {
+    for (var stmt : stmts) {
+      if (stmt instanceof Stmt.Var || stmt instanceof Stmt.Class) return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    var left = this.visit(expr.left);
+    var right = this.visit(expr.right);
+
+    if (left == expr.left && right == expr.right) return expr;
+
+    return new Expr.Binary(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitTernaryExpr(Expr.Ternary expr) {
+    var condition = this.visit(expr.condition);
+    var onTrue = this.visit(expr.onTrue);
+    var onFalse = this.visit(expr.onFalse);
+
+    if (condition == expr.condition && onTrue == expr.onTrue && onFalse == expr.onFalse) {
+      return expr;
+    }
+
+    return new Expr.Ternary(condition, onTrue, onFalse);
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    var callee = this.visit(expr.callee);
+    var args = new ArrayList<Expr>(expr.args.size());
+    var changed = callee != expr.callee;
+
+    for (var arg : expr.args) {
+      var rewritten = this.visit(arg);
+      changed |= rewritten != arg;
+      args.add(rewritten);
+    }
+
+    return changed ? new Expr.Call(callee, expr.paren, args) : expr;
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    var inner = this.visit(expr.expression);
+
+    return inner == expr.expression ? expr : new Expr.Grouping(inner);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    var right = this.visit(expr.right);
+
+    return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    var value = this.visit(expr.value);
+
+    return value == expr.value ? expr : new Expr.Assign(expr.name, value);
+  }
+
+  @Override
+  public Expr visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    var value = this.visit(expr.value);
+
+    return value == expr.value ? expr : new Expr.CompoundAssign(expr.name, expr.operator, value);
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    var left = this.visit(expr.left);
+    var right = this.visit(expr.right);
+
+    if (left == expr.left && right == expr.right) return expr;
+
+    return new Expr.Logical(left, expr.operator, right);
+  }
+
+  /** Functions are rewritten on their own; one in a loop being rewritten is already done. */
+  @Override
+  public Expr visitFnExpr(Expr.Fn expr) {
+    if (this.loop != null) return expr;
+
+    if (expr.body instanceof LazyBody lazy && !lazy.isLoaded()) {
+      lazy.andThen(stmts -> this.hoistFunction(expr.parms, stmts));
+      return expr;
+    }
+
+    var body = this.hoistFunction(expr.parms, expr.body);
+
+    return body == expr.body ? expr : new Expr.Fn(expr.pos, expr.parms, body);
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    var object = this.visit(expr.object);
+
+    return object == expr.object ? expr : new Expr.Get(object, expr.name);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    var object = this.visit(expr.object);
+    var value = this.visit(expr.value);
+
+    if (object == expr.object && value == expr.value) return expr;
+
+    return new Expr.Set(object, expr.name, value);
+  }
+
+  @Override
+  public Expr visitCompoundSetExpr(Expr.CompoundSet expr) {
+    var object = this.visit(expr.object);
+    var value = this.visit(expr.value);
+
+    if (object == expr.object && value == expr.value) return expr;
+
+    return new Expr.CompoundSet(object, expr.name, expr.operator, value);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    var expr = this.visit(stmt.expr);
+
+    return expr == stmt.expr ? stmt : new Stmt.Expression(expr);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    var initializer = this.visitNullable(stmt.initializer);
+
+    if (initializer == stmt.initializer) return stmt;
+
+    return new Stmt.Var(stmt.name, initializer, stmt.mutable, stmt.isStatic);
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    var stmts = this.hoistList(stmt.stmts);
+
+    return stmts == stmt.stmts ? stmt : new Stmt.Block(stmts);
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    var condition = this.visit(stmt.condition);
+    var thenBranch = this.visit(stmt.thenBranch);
+    var elseBranch = stmt.elseBranch != null ? this.visit(stmt.elseBranch) : null;
+
+    if (condition == stmt.condition
+        && thenBranch == stmt.thenBranch
+        && elseBranch == stmt.elseBranch) {
+      return stmt;
+    }
+
+    return new Stmt.If(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    var value = this.visitNullable(stmt.value);
+
+    return value == stmt.value ? stmt : new Stmt.Return(stmt.keyword, value);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    var body = this.visit(stmt.body);
+    var condition = this.visit(stmt.condition);
+    Stmt result = stmt;
+
+    if (condition != stmt.condition || body != stmt.body) {
+      result = new Stmt.While(condition, body);
+    }
+
+    return this.function != null && this.loop == null ? this.hoistOut(result) : result;
+  }
+
+  @Override
+  @SuppressWarnings("nullness")
+  public Stmt visitForStmt(Stmt.For stmt) {
+    var tracked = this.function != null;
+
+    if (tracked) {
+      this.function.scopes.push(new HashSet<>());
+
+      if (stmt.initializer instanceof Stmt.Var counter) {
+        this.function.scopes.peek().add(counter.name.lexeme());
+      }
+    }
+
+    var initializer = stmt.initializer != null ? this.visit(stmt.initializer) : null;
+    var body = this.hoistList(stmt.body);
+    var condition = this.visit(stmt.condition);
+    var increment = this.visitNullable(stmt.increment);
+
+    if (tracked) this.function.scopes.pop();
+
+    Stmt result = stmt;
+
+    if (initializer != stmt.initializer
+        || condition != stmt.condition
+        || increment != stmt.increment
+        || body != stmt.body) {
+      // a hoisted local in the body needs a scope of its own each iteration
+      var bodyScoped = stmt.bodyScoped || declaresAny(body);
+      result = new Stmt.For(initializer, condition, increment, body, bodyScoped);
+    }
+
+    return tracked && this.loop == null ? this.hoistOut(result) : result;
+  }
+
+  @Override
+  public Stmt visitBreakStmt(Stmt.Break stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitContinueStmt(Stmt.Continue stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    var decls = new ArrayList<Stmt.Var>(stmt.decls.size());
+    var changed = false;
+
+    for (var decl : stmt.decls) {
+      var rewritten = decl.initializer instanceof Expr.Fn ? (Stmt.Var) this.visit(decl) : decl;
+      changed |= rewritten != decl;
+      decls.add(rewritten);
+    }
+
+    return changed ? new Stmt.Class(stmt.name, decls, stmt.superclass) : stmt;
+  }
+
+  /** What is known about the function being rewritten. */
+  private static final class Function {
+    /** The locals in scope at the statement being rewritten. */
+    final Deque<Set<String>> scopes;
+
+    /** What each local of the function, or any function in it, can hold. */
+    final Map<String, Type> types;
+
+    /** The locals assigned from a nested function. */
+    final Set<String> captured;
+
+    Function(List<Token> parms, List<Stmt> body) {
+      var writes = new Writes();
+      var names = new HashSet<String>();
+
+      for (var parm : parms) {
+        writes.declare(parm.lexeme(), null);
+        names.add(parm.lexeme());
+      }
+
+      writes.scan(body);
+
+      this.scopes = new ArrayDeque<>();
+      this.scopes.push(names);
+      this.types = writes.infer();
+      this.captured = writes.captured;
+    }
+  }
+
+  /** The invariant locals of the loop being rewritten and what it has hoisted so far. */
+  private final class Loop {
+    final Set<String> invariant;
+    final Map<String, Stmt.Var> temps;
+
+    Loop(Set<String> invariant) {
+      this.invariant = invariant;
+      this.temps = new LinkedHashMap<>();
+    }
+
+    Expr temp(Expr expr) {
+      var temp =
+          this.temps.computeIfAbsent(
+              key(expr),
+              k -> {
+                var name = "$" + LoopInvariantHoister.this.nextTemp++;
+                var token = new Token(TokenType.IDENTIFIER, name, null, position(expr));
+                return new Stmt.Var(token, expr, false, false);
+              });
+
+      return new Expr.Variable(temp.name);
+    }
+  }
+
+  /** A value written to a local, or a null value for a parameter or anything else unknown. */
+  private record Def(@Nullable Expr value, @Nullable TokenType operator) {}
+
+  /**
+   * Every write to a local in some statements, with the variables read before any local of that
+   * name was declared, which must then be an outer or global one.
+   */
+  private static final class Writes implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    final Map<String, List<Def>> defs;
+    final Set<String> captured;
+    private final Set<Expr.Variable> outside;
+    private final Deque<Set<String>> scopes;
+    private int functions;
+
+    Writes() {
+      this.defs = new HashMap<>();
+      this.captured = new HashSet<>();
+      this.outside = Collections.newSetFromMap(new IdentityHashMap<>());
+      this.scopes = new ArrayDeque<>();
+      this.scopes.push(new HashSet<>());
+      this.functions = 0;
+    }
+
+    void scan(List<Stmt> stmts) {
+      for (var stmt : stmts) {
+        stmt.accept(this);
+      }
+    }
+
+    @SuppressWarnings("nullness")
+    void declare(String name, @Nullable Expr value) {
+      this.scopes.peek().add(name);
+      this.write(name, value, null);
+    }
+
+    private void write(String name, @Nullable Expr value, @Nullable TokenType operator) {
+      this.defs.computeIfAbsent(name, k -> new ArrayList<>()).add(new Def(value, operator));
+    }
+
+    /** The most specific type each name holds, found by widening from nothing until stable. */
+    Map<String, Type> infer() {
+      var types = new HashMap<String, Type>();
+      var changed = true;
+
+      while (changed) {
+        changed = false;
+
+        for (var entry : this.defs.entrySet()) {
+          Type type = null;
+
+          for (var def : entry.getValue()) {
+            type = join(type, this.typeOf(def, types));
+          }
+
+          if (type != null && type != types.get(entry.getKey())) {
+            types.put(entry.getKey(), type);
+            changed = true;
+          }
+        }
+      }
+
+      return types;
+    }
+
+    private @Nullable Type typeOf(Def def, Map<String, Type> types) {
+      if (def.value == null) return Type.ANY;
+
+      var value = this.typeOf(def.value, types);
+
+      if (def.operator == null) return value;
+      if (def.operator != TokenType.PLUS) return Type.NUMBER;
+
+      // anything else added to the old value throws instead of writing it
+      return value == null || value == Type.NUMBER ? value : Type.ANY;
+    }
+
+    /** The type the expression gives if it doesn't throw, or null if not known yet. */
+    private @Nullable Type typeOf(Expr expr, Map<String, Type> types) {
+      switch (expr.kind) {
+        case Expr.LITERAL:
+          return LoopInvariantHoister.typeOf(((Expr.Literal) expr).value);
+
+        case Expr.VARIABLE:
+          var variable = (Expr.Variable) expr;
+
+          return this.outside.contains(variable) ? Type.ANY : types.get(variable.name.lexeme());
+
+        case Expr.GROUPING:
+          return this.typeOf(((Expr.Grouping) expr).expression, types);
+
+        case Expr.UNARY:
+          var unary = (Expr.Unary) expr;
+
+          return switch (unary.operator.type()) {
+            case BANG -> Type.BOOLEAN;
+            case MINUS -> Type.NUMBER;
+            default -> this.typeOf(unary.right, types);
+          };
+
+        case Expr.BINARY:
+          var binary = (Expr.Binary) expr;
+          var left = this.typeOf(binary.left, types);
+          var right = this.typeOf(binary.right, types);
+
+          if (binary.operator.type() == TokenType.COMMA) return right;
+
+          if (binary.operator.type() == TokenType.PLUS) {
+            if (left == null || right == null) return null;
+
+            return left == Type.NUMBER && right == Type.NUMBER ? Type.NUMBER : Type.ANY;
+          }
+
+          var type = binaryType(binary.operator.type());
+          return type != null ? type : Type.ANY;
+
+        case Expr.LOGICAL:
+          var logical = (Expr.Logical) expr;
+
+          return join(this.typeOf(logical.left, types), this.typeOf(logical.right, types));
+
+        case Expr.TERNARY:
+          var ternary = (Expr.Ternary) expr;
+
+          return join(this.typeOf(ternary.onTrue, types), this.typeOf(ternary.onFalse, types));
+
+        case Expr.ASSIGN:
+          return this.typeOf(((Expr.Assign) expr).value, types);
+
+        default:
+          return Type.ANY;
+      }
+    }
+
+    private boolean isDeclared(String name) {
+      for (var scope : this.scopes) {
+        if (scope.contains(name)) return true;
+      }
+
+      return false;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+      expr.left.accept(this);
+      expr.right.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+      expr.condition.accept(this);
+      expr.onTrue.accept(this);
+      expr.onFalse.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+      expr.callee.accept(this);
+
+      for (var arg : expr.args) {
+        arg.accept(this);
+      }
+
+      return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+      expr.expression.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+      expr.right.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+      if (!this.isDeclared(expr.name.lexeme())) this.outside.add(expr);
+
+      return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+      expr.value.accept(this);
+      this.write(expr.name.lexeme(), expr.value, null);
+
+      if (this.functions > 0) this.captured.add(expr.name.lexeme());
+
+      return null;
+    }
+
+    @Override
+    public Void visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+      expr.value.accept(this);
+      this.write(expr.name.lexeme(), expr.value, expr.operator.type());
+
+      if (this.functions > 0) this.captured.add(expr.name.lexeme());
+
+      return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+      expr.left.accept(this);
+      expr.right.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitFnExpr(Expr.Fn expr) {
+      // only top-level functions are lazy, and those are never nested in what is scanned
+      if (expr.body instanceof LazyBody lazy && !lazy.isLoaded()) return null;
+
+      this.functions++;
+      this.scopes.push(new HashSet<>());
+
+      for (var parm : expr.parms) {
+        this.declare(parm.lexeme(), null);
+      }
+
+      this.scan(expr.body);
+      this.scopes.pop();
+      this.functions--;
+
+      return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+      expr.object.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+      expr.object.accept(this);
+      expr.value.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitCompoundSetExpr(Expr.CompoundSet expr) {
+      expr.object.accept(this);
+      expr.value.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+      stmt.expr.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+      if (stmt.initializer != null) stmt.initializer.accept(this);
+
+      this.declare(stmt.name.lexeme(), stmt.initializer);
+      return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+      this.scopes.push(new HashSet<>());
+      this.scan(stmt.stmts);
+      this.scopes.pop();
+      return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+      stmt.condition.accept(this);
+      stmt.thenBranch.accept(this);
+
+      if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+
+      return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+      if (stmt.value != null) stmt.value.accept(this);
+
+      return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+      stmt.condition.accept(this);
+      stmt.body.accept(this);
+      return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+      this.scopes.push(new HashSet<>());
+
+      if (stmt.initializer != null) stmt.initializer.accept(this);
+
+      stmt.condition.accept(this);
+      this.scopes.push(new HashSet<>());
+      this.scan(stmt.body);
+      this.scopes.pop();
+
+      if (stmt.increment != null) stmt.increment.accept(this);
+
+      this.scopes.pop();
+      return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+      return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+      return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+      if (stmt.superclass != null) stmt.superclass.accept(this);
+
+      this.declare(stmt.name.lexeme(), null);
+
+      for (var decl : stmt.decls) {
+        if (decl.initializer != null) decl.initializer.accept(this);
+      }
+
+      return null;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.dylmay.jlox.parser;
+
+import com.dylmay.jlox.assets.Token;
+import com.dylmay.jlox.assets.TokenType;
+import com.dylmay.jlox.lexer.TokenBuffer;
+import javax.annotation.Nullable;
+
+/**
+ * Walks a {@link TokenBuffer} by index. Type checks read the packed arrays directly and a {@link
+ * Token} is only built when the parser asks for one. The walk can be limited to a range of the
+ * buffer, which then reads as if an EOF followed it.
+ */
+class BufferCursor implements TokenCursor {
+  private final TokenBuffer tokens;
+  private final int end;
+  private int current;
+
+  private int cachedIndex;
+  private @Nullable Token cached;
+
+  BufferCursor(TokenBuffer tokens) {
+    this(tokens, 0, tokens.size() - 1);
+  }
+
+  BufferCursor(TokenBuffer tokens, int start, int end) {
+    this.tokens = tokens;
+    this.end = end;
+    this.current = start;
+    this.cachedIndex = -1;
+    this.cached = null;
+  }
+
+  @Override
+  public TokenType peekType() {
+    return this.current < this.end ? this.tokens.type(this.current) : TokenType.EOF;
+  }
+
+  @Override
+  public Token peek() {
+    return this.token(this.current);
+  }
+
+  @Override
+  public Token previous() {
+    return this.token(this.current - 1);
+  }
+
+  @Override
+  public void advance() {
+    this.current++;
+  }
+
+  /**
+   * Skips the rest of a block whose '{' was just consumed, by matching braces alone. Returns the
+   * index of its '}', which is then the previous token, or -1 without moving if it is never closed.
+   */
+  int skipBlock() {
+    var depth = 1;
+
+    for (int i = this.current; i < this.end; i++) {
+      switch (this.tokens.type(i)) {
+        case LEFT_BRACE -> depth++;
+        case RIGHT_BRACE -> {
+          if (--depth == 0) {
+            this.current = i + 1;
+            return i;
+          }
+        }
+        default -> {}
+      }
+    }
+
+    return -1;
+  }
+
+  int index() {
+    return this.current;
+  }
+
+  TokenBuffer buffer() {
+    return this.tokens;
+  }
+
+  @SuppressWarnings("nullness")
+  private Token token(int index) {
+    if (this.cachedIndex != index) {
+      this.cached =
+          index < this.end || this.tokens.type(this.end) == TokenType.EOF
+              ? this.tokens.token(Math.min(index, this.end))
+              : new Token(TokenType.EOF, "", null, this.tokens.position(this.end));
+      this.cachedIndex = index;
+    }
+
+    return this.cached;
+  }
+}
@@ -0,0 +1,208 @@
+package com.dylmay.jlox.parser;
+
+import com.dylmay.jlox.assets.LineMap;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.error.LoxErrorHandler;
+import com.dylmay.jlox.lexer.Lexer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * A script kept parsed across edits. The text is split into its top-level declarations, each lexed
+ * with its own {@link LineMap} so its positions stay valid wherever the declaration moves. An edit
+ * relexes and reparses from the first declaration whose lexing looked at the edited text, until a
+ * new declaration ends on an old boundary past the edit; every declaration from there on is reused
+ * as it was.
+ *
+ * <p>Only lexing and parsing are incremental. The statements are unresolved, so the resolver and
+ * any optimizer passes still have to run over all of {@link #statements} after each edit.
+ *
+ * <p>A replaced declaration releases its line map, so its old positions stop resolving. Closing
+ * the document releases the rest.
+ */
+public final class Document implements AutoCloseable {
+  private final StringBuilder text;
+  private final List<Segment> segments;
+  private boolean tailBroken;
+
+  public Document(String text) {
+    this.text = new StringBuilder(text);
+    this.segments = new ArrayList<>();
+    this.tailBroken = false;
+
+    this.reparse(0, 0, Integer.MAX_VALUE, 0);
+  }
+
+  public String text() {
+    return this.text.toString();
+  }
+
+  /** The parsed top-level declarations, leaving out any that failed to parse. */
+  public List<Stmt> statements() {
+    var stmts = new ArrayList<Stmt>(this.segments.size());
+
+    for (var segment : this.segments) {
+      if (segment.stmt != null) {
+        stmts.add(segment.stmt);
+      }
+    }
+
+    return stmts;
+  }
+
+  /** Releases the line map of every declaration, after which none of their positions resolve. */
+  @Override
+  public void close() {
+    for (var segment : this.segments) {
+      segment.lines.release();
+    }
+  }
+
+  /** Whether any declaration, new or reused, had a lexer or parser error. */
+  public boolean hasErrors() {
+    if (this.tailBroken) return true;
+
+    for (var segment : this.segments) {
+      if (segment.broken) return true;
+    }
+
+    return false;
+  }
+
+  /** Replaces length chars from the offset with the replacement and reparses what it touched. */
+  public void edit(int offset, int length, String replacement) {
+    Objects.checkFromIndexSize(offset, length, this.text.length());
+
+    var index = 0;
+    var start = 0;
+
+    while (index < this.segments.size() && start + this.segments.get(index).reach <= offset) {
+      start += this.segments.get(index++).length;
+    }
+
+    this.text.replace(offset, offset + length, replacement);
+    this.reparse(index, start, offset + length, replacement.length() - length);
+  }
+
+  /**
+   * Parses declarations from the start of segment index, at offset start of the new text. Old
+   * segments at or past oldEnd are reused once a new declaration ends on one of their starts,
+   * which have moved by delta.
+   */
+  private void reparse(int index, int start, int oldEnd, int delta) {
+    var fresh = new ArrayList<Segment>();
+    var reuse = index;
+    var reuseStart = start;
+    var offset = start;
+
+    while (true) {
+      while (reuse < this.segments.size()
+          && (reuseStart < oldEnd || reuseStart + delta < offset)) {
+        reuseStart += this.segments.get(reuse++).length;
+      }
+
+      if (reuseStart >= oldEnd && reuseStart + delta == offset) break;
+
+      var segment = this.parseSegment(offset);
+
+      if (segment == null) {
+        reuse = this.segments.size();
+        break;
+      }
+
+      fresh.add(segment);
+      offset += segment.length;
+    }
+
+    var replaced = this.segments.subList(index, reuse);
+
+    for (var segment : replaced) {
+      segment.lines.release();
+    }
+
+    replaced.clear();
+    this.segments.addAll(index, fresh);
+    this.place(index);
+  }
+
+  /** Parses the declaration at the offset, or returns null if only trivia is left. */
+  private @Nullable Segment parseSegment(int offset) {
+    var lexer = new Lexer(this.text, offset);
+    var lines = lexer.lineMap();
+    var parser = new Parser(lexer);
+
+    try (var reports = LoxErrorHandler.deferReports()) {
+      if (parser.isAtEnd()) {
+        this.tailBroken = reports.replayBefore(Integer.MAX_VALUE);
+        lines.release();
+        return null;
+      }
+
+      var stmt = parser.declaration();
+      var last = parser.previous();
+      var length = last.position() - lines.base() + last.lexeme().length();
+
+      lines.close(length);
+      var broken = reports.replayBefore(lines.base() + length);
+
+      return new Segment(stmt, length, lexer.examined(), broken, lines);
+    }
+  }
+
+  /** Places every segment from index onwards after the one before it. */
+  private void place(int index) {
+    var line = 1;
+    var column = 0;
+
+    if (index > 0) {
+      var previous = this.segments.get(index - 1);
+      line = previous.line + previous.newlines;
+      column = previous.newlines == 0 ? previous.column + previous.endColumn : previous.endColumn;
+    }
+
+    for (var segment : this.segments.subList(index, this.segments.size())) {
+      segment.place(line, column);
+      line += segment.newlines;
+      column = segment.newlines == 0 ? column + segment.endColumn : segment.endColumn;
+    }
+  }
+
+  /**
+   * A top-level declaration with the trivia before it. Parsing it may have looked ahead at text
+   * past its end, up to its reach.
+   */
+  private static final class Segment {
+    private final @Nullable Stmt stmt;
+    private final int length;
+    private final int reach;
+    private final boolean broken;
+    private final LineMap lines;
+    private final int newlines;
+    private final int endColumn;
+
+    private int line;
+    private int column;
+
+    Segment(@Nullable Stmt stmt, int length, int reach, boolean broken, LineMap lines) {
+      var end = lines.locate(length);
+
+      this.stmt = stmt;
+      this.length = length;
+      this.reach = reach;
+      this.broken = broken;
+      this.lines = lines;
+      this.newlines = end.lineNum() - 1;
+      this.endColumn = end.lineOffset();
+      this.line = 1;
+      this.column = 0;
+    }
+
+    void place(int line, int column) {
+      this.line = line;
+      this.column = column;
+      this.lines.place(line, column);
+    }
+  }
+}
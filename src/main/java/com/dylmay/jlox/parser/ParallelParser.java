@@ -0,0 +1,149 @@
+package com.dylmay.jlox.parser;
+
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.assets.TokenType;
+import com.dylmay.jlox.error.LoxErrorHandler;
+import com.dylmay.jlox.lexer.TokenBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import javax.annotation.Nullable;
+
+/**
+ * Parses a token buffer in chunks on the common {@link ForkJoinPool}. Chunks start at a top-level
+ * {@code fn}, {@code class} or {@code let} that follows a {@code ;} or {@code }} outside any
+ * braces or parens, where a sequential parse also starts a new declaration. The statements are
+ * joined back up in source order.
+ *
+ * <p>Error recovery can run across a chunk boundary, so if any chunk reports an error the chunks
+ * are thrown away and the whole buffer is parsed again in one go. Diagnostics are then exactly
+ * those of a {@link Parser}.
+ */
+public final class ParallelParser {
+  private static final int MIN_CHUNK_SIZE = 1 << 16;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private ParallelParser() {}
+
+  public static List<Stmt> parse(TokenBuffer tokens) {
+    return ParallelParser.parse(tokens, chunkSize(tokens.size()));
+  }
+
+  static List<Stmt> parse(TokenBuffer tokens, int chunkSize) {
+    var splits = splitPoints(tokens, chunkSize);
+
+    if (splits.length <= 2) {
+      return new Parser(tokens).parse();
+    }
+
+    var chunks = new ArrayList<Chunk>();
+
+    for (int i = 1; i < splits.length; i++) {
+      var view = tokens.concurrentView();
+
+      if (view == null) {
+        return new Parser(tokens).parse();
+      }
+
+      chunks.add(new Chunk(new Parser(view, splits[i - 1], splits[i])));
+    }
+
+    ForkJoinTask.invokeAll(chunks);
+
+    var stmts = new ArrayList<Stmt>();
+
+    for (var chunk : chunks) {
+      if (!chunk.reports().isEmpty()) {
+        return new Parser(tokens).parse();
+      }
+
+      stmts.addAll(chunk.stmts());
+    }
+
+    return stmts;
+  }
+
+  private static int chunkSize(int tokens) {
+    var threads = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+
+    return Math.max(MIN_CHUNK_SIZE, tokens / threads);
+  }
+
+  /**
+   * Token indexes where a top-level declaration starts, at least chunkSize apart, bracketed by the
+   * start of the buffer and its EOF. Unbalanced braces or parens give no split at all.
+   */
+  static int[] splitPoints(TokenBuffer tokens, int chunkSize) {
+    var end = tokens.size() - 1;
+    var splits = new int[end / chunkSize + 2];
+    var count = 1;
+    var next = chunkSize;
+    var depth = 0;
+
+    for (int i = 0; i < end; i++) {
+      switch (tokens.type(i)) {
+        case LEFT_BRACE, LEFT_PAREN -> depth++;
+        case RIGHT_BRACE, RIGHT_PAREN -> depth--;
+        default -> {}
+      }
+
+      if (depth < 0) {
+        return new int[] {0, end};
+      }
+
+      if (depth == 0 && i + 1 >= next && i + 1 < end && startsDeclaration(tokens, i + 1)) {
+        splits[count++] = i + 1;
+        next = i + 1 + chunkSize;
+      }
+    }
+
+    if (depth != 0) {
+      return new int[] {0, end};
+    }
+
+    splits[count++] = end;
+    return Arrays.copyOf(splits, count);
+  }
+
+  private static boolean startsDeclaration(TokenBuffer tokens, int index) {
+    var previous = tokens.type(index - 1);
+
+    if (previous != TokenType.SEMICOLON && previous != TokenType.RIGHT_BRACE) return false;
+
+    return switch (tokens.type(index)) {
+      case FN, CLASS, LET -> true;
+      default -> false;
+    };
+  }
+
+  private static final class Chunk extends RecursiveAction {
+    private final Parser parser;
+    private @Nullable List<Stmt> stmts;
+    private @Nullable LoxErrorHandler.Deferred reports;
+
+    Chunk(Parser parser) {
+      this.parser = parser;
+    }
+
+    @Override
+    protected void compute() {
+      try (var held = LoxErrorHandler.deferReports()) {
+        this.stmts = this.parser.parse();
+        this.reports = held;
+      }
+    }
+
+    @SuppressWarnings("nullness")
+    List<Stmt> stmts() {
+      return this.stmts;
+    }
+
+    @SuppressWarnings("nullness")
+    LoxErrorHandler.Deferred reports() {
+      return this.reports;
+    }
+  }
+}
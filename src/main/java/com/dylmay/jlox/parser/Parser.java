@@ -1,30 +1,132 @@
 package com.dylmay.jlox.parser;
 
 import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.LazyBody;
 import com.dylmay.jlox.assets.Stmt;
 import com.dylmay.jlox.assets.Token;
 import com.dylmay.jlox.assets.TokenType;
 import com.dylmay.jlox.error.ErrorMessage;
 import com.dylmay.jlox.error.LoxErrorHandler;
+import com.dylmay.jlox.lexer.TokenBuffer;
+import com.dylmay.jlox.lexer.TokenStream;
+import com.dylmay.jlox.util.RuntimeError;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import javax.annotation.Nullable;
 
 public class Parser {
   private static class ParseException extends RuntimeException {}
 
-  private interface ExprFunc {
-    Expr expr();
+  private interface PrefixRule {
+    Expr parse(Parser parser, Token token);
+  }
+
+  private interface InfixRule {
+    Expr parse(Parser parser, Expr left, Token operator);
+  }
+
+  /** How tightly each infix operator binds, loosest first. */
+  private static final class Power {
+    static final int ASSIGNMENT = 1;
+    static final int TERNARY = 2;
+    static final int OR = 3;
+    static final int AND = 4;
+    static final int EQUALITY = 5;
+    static final int COMPARISON = 6;
+    static final int TERM = 7;
+    static final int FACTOR = 8;
+    static final int UNARY = 9;
+    static final int CALL = 10;
   }
 
   private static final LoxErrorHandler ERR_HDNLR = LoxErrorHandler.getInstance(Parser.class);
-  private final List<Token> tokens;
-  private int current;
+  private static final PrefixRule[] PREFIX = new PrefixRule[TokenType.values().length];
+  private static final InfixRule[] INFIX = new InfixRule[TokenType.values().length];
+  private static final int[] POWER = new int[TokenType.values().length];
+
+  static {
+    prefix(
+        Parser::literal,
+        TokenType.FALSE,
+        TokenType.TRUE,
+        TokenType.NIL,
+        TokenType.NUMBER,
+        TokenType.STRING);
+    prefix((parser, token) -> new Expr.This(token), TokenType.THIS);
+    prefix((parser, token) -> new Expr.Variable(token), TokenType.IDENTIFIER, TokenType.EQUAL);
+    prefix((parser, token) -> parser.exprFn("Lambda"), TokenType.FN);
+    prefix(Parser::grouping, TokenType.LEFT_PAREN);
+    prefix(Parser::unary, TokenType.BANG, TokenType.MINUS, TokenType.PLUS);
+
+    infix(
+        Power.ASSIGNMENT,
+        Parser::assignment,
+        TokenType.EQUAL,
+        TokenType.STAR_EQUAL,
+        TokenType.SLASH_EQUAL,
+        TokenType.MINUS_EQUAL,
+        TokenType.PLUS_EQUAL);
+    infix(Power.TERNARY, Parser::ternary, TokenType.TERNARY);
+    infix(Power.OR, Parser::or, TokenType.OR);
+    infix(Power.AND, Parser::and, TokenType.AND);
+    infix(Power.EQUALITY, Parser::binary, TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL);
+    infix(
+        Power.COMPARISON,
+        Parser::binary,
+        TokenType.GREATER,
+        TokenType.GREATER_EQUAL,
+        TokenType.LESS,
+        TokenType.LESS_EQUAL);
+    infix(Power.TERM, Parser::binary, TokenType.MINUS, TokenType.PLUS);
+    infix(Power.FACTOR, Parser::binary, TokenType.SLASH, TokenType.STAR);
+    infix(Power.CALL, Parser::finishCall, TokenType.LEFT_PAREN);
+    infix(Power.CALL, Parser::property, TokenType.DOT);
+  }
+
+  private final TokenCursor tokens;
+  private final boolean lazyBodies;
+  private int blockDepth;
 
   public Parser(List<Token> tokens) {
-    this.tokens = tokens;
-    this.current = 0;
+    this(tokens.iterator()::next);
+  }
+
+  public Parser(TokenStream tokens) {
+    this.tokens = new StreamCursor(tokens);
+    this.lazyBodies = false;
+  }
+
+  public Parser(TokenBuffer tokens) {
+    this(tokens, false);
+  }
+
+  /**
+   * A parser that can leave the bodies of top-level functions as a {@link LazyBody}, only matching
+   * their braces until they are first read. Errors inside such a body are then reported when it is
+   * read rather than now.
+   */
+  public Parser(TokenBuffer tokens, boolean lazyBodies) {
+    this.tokens = new BufferCursor(tokens);
+    this.lazyBodies = lazyBodies;
+  }
+
+  /** Parses only the tokens from start up to end, as if the stream ended there. */
+  Parser(TokenBuffer tokens, int start, int end) {
+    this.tokens = new BufferCursor(tokens, start, end);
+    this.lazyBodies = false;
+  }
+
+  private static void prefix(PrefixRule rule, TokenType... types) {
+    for (var type : types) {
+      PREFIX[type.ordinal()] = rule;
+    }
+  }
+
+  private static void infix(int power, InfixRule rule, TokenType... types) {
+    for (var type : types) {
+      INFIX[type.ordinal()] = rule;
+      POWER[type.ordinal()] = power;
+    }
   }
 
   public List<Stmt> parse() {
@@ -41,7 +143,8 @@ public class Parser {
     return statements;
   }
 
-  private @Nullable Stmt declaration() {
+  @Nullable
+  Stmt declaration() {
     try {
       if (match(TokenType.LET)) {
         return this.varDeclaration(false);
@@ -113,9 +216,37 @@ public class Parser {
     consume(TokenType.RIGHT_PAREN, "Expected ')' after parameters.");
     consume(TokenType.LEFT_BRACE, "Expected '{' before " + kind + " body.");
 
+    if (this.lazyBodies && this.blockDepth == 0 && kind.equals("function")) {
+      var body = this.lazyBlock(funcTkn.position());
+
+      if (body != null) return new Expr.Fn(funcTkn.position(), parms, body);
+    }
+
     return new Expr.Fn(funcTkn.position(), parms, this.block());
   }
 
+  /** Skips a block to be parsed when first read, or returns null if its braces don't match. */
+  private @Nullable LazyBody lazyBlock(int position) {
+    var cursor = (BufferCursor) this.tokens;
+    var start = cursor.index();
+    var end = cursor.skipBlock();
+
+    if (end < 0) return null;
+
+    var buffer = cursor.buffer();
+
+    return new LazyBody(
+        () -> {
+          var stmts = new Parser(buffer, start, end).parse();
+
+          if (ERR_HDNLR.hasError()) {
+            throw new RuntimeError(position, "Function body failed to parse");
+          }
+
+          return stmts;
+        });
+  }
+
   private Stmt stmtFunction(String kind, boolean isStatic) {
     var name = consume(TokenType.IDENTIFIER, "Expected " + kind + " name.");
 
@@ -192,22 +323,23 @@ public class Parser {
       increment = expression();
     }
 
-    Stmt body = bracedStatement();
+    var body = bracedStatement();
+    var stmts = body instanceof Stmt.Block block ? block.stmts : List.of(body);
 
-    if (increment != null) {
-      body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
-    }
     if (condition == null) {
       condition = new Expr.Literal(true, token.position());
     }
 
-    body = new Stmt.While(condition, body);
+    return new Stmt.For(initializer, condition, increment, stmts, this.declaresAny(stmts));
+  }
 
-    if (initializer != null) {
-      body = new Stmt.Block(Arrays.asList(initializer, body));
+  /** Whether any of the statements declares a name in the scope it runs in. */
+  private boolean declaresAny(List<Stmt> stmts) {
+    for (var stmt : stmts) {
+      if (stmt instanceof Stmt.Var || stmt instanceof Stmt.Class) return true;
     }
 
-    return body;
+    return false;
   }
 
   private Stmt ifStatement() {
@@ -249,6 +381,7 @@ public class Parser {
 
   private List<Stmt> block() {
     var stmts = new ArrayList<Stmt>();
+    this.blockDepth++;
 
     while (!check(TokenType.RIGHT_BRACE) && !this.isAtEnd()) {
       var decl = this.declaration();
@@ -258,273 +391,178 @@ public class Parser {
       }
     }
 
+    this.blockDepth--;
     consume(TokenType.RIGHT_BRACE, "Expected '}' after block.");
 
     return stmts;
   }
 
   private Expr expression() {
-    return this.assignment();
-  }
-
-  private Expr assignment() {
-    var expr = this.ternary();
-
-    if ((expr instanceof Expr.Variable || expr instanceof Expr.Get)
-        && match(
-            TokenType.STAR_EQUAL,
-            TokenType.MINUS_EQUAL,
-            TokenType.PLUS_EQUAL,
-            TokenType.SLASH_EQUAL,
-            TokenType.EQUAL)) {
-      var token = this.previous();
-      var value = this.assignment();
-
-      switch (token.type()) {
-        case STAR_EQUAL:
-          value =
-              new Expr.Binary(expr, new Token(TokenType.STAR, "*", null, token.position()), value);
-          break;
+    return this.expression(Power.ASSIGNMENT);
+  }
 
-        case SLASH_EQUAL:
-          value =
-              new Expr.Binary(expr, new Token(TokenType.SLASH, "/", null, token.position()), value);
-          break;
+  /**
+   * Parses a prefix expression, then keeps folding it into any infix operator that binds at least
+   * as tightly as minPower.
+   */
+  private Expr expression(int minPower) {
+    var prefix = PREFIX[tokens.peekType().ordinal()];
 
-        case MINUS_EQUAL:
-          value =
-              new Expr.Binary(expr, new Token(TokenType.MINUS, "-", null, token.position()), value);
-          break;
+    if (prefix == null) {
+      throw this.error(this.peek(), "Expected expression.");
+    }
 
-        case PLUS_EQUAL:
-          value =
-              new Expr.Binary(expr, new Token(TokenType.PLUS, "+", null, token.position()), value);
-          break;
+    this.advance();
+    var expr = prefix.parse(this, this.previous());
 
-        case EQUAL:
-          break;
+    while (true) {
+      var type = tokens.peekType().ordinal();
+      var infix = INFIX[type];
 
-        default:
-          this.error(this.previous(), "Invalid assignment target");
-          break;
-      }
+      if (infix == null || POWER[type] < minPower) break;
 
-      if (expr instanceof Expr.Variable variable) {
-        return new Expr.Assign(variable.name, value);
-      } else if (expr instanceof Expr.Get get) {
-        return new Expr.Set(get.object, get.name, value);
-      }
+      this.advance();
+      expr = infix.parse(this, expr, this.previous());
     }
 
     return expr;
   }
 
-  private Expr equality() {
-    return this.findBinaryMatch(this::comparison, TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL);
+  private Expr literal(Token token) {
+    return new Expr.Literal(
+        switch (token.type()) {
+          case FALSE -> false;
+          case TRUE -> true;
+          case NIL -> null;
+          default -> token.literal();
+        },
+        token.position());
   }
 
-  private Expr comparison() {
-    return this.findBinaryMatch(
-        this::term,
-        TokenType.GREATER,
-        TokenType.GREATER_EQUAL,
-        TokenType.LESS,
-        TokenType.LESS_EQUAL);
-  }
+  private Expr grouping(Token paren) {
+    var expr = this.expression();
 
-  private Expr term() {
-    return this.findBinaryMatch(this::factor, TokenType.MINUS, TokenType.PLUS);
-  }
+    this.consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
 
-  private Expr factor() {
-    return this.findBinaryMatch(this::unary, TokenType.SLASH, TokenType.STAR);
+    return new Expr.Grouping(expr);
   }
 
-  private Expr unary() {
-    if (match(TokenType.BANG, TokenType.MINUS, TokenType.PLUS)) {
-      var operator = this.previous();
-      var right = this.unary();
-
-      return new Expr.Unary(operator, right);
-    }
-
-    return call();
+  private Expr unary(Token operator) {
+    return new Expr.Unary(operator, this.expression(Power.UNARY));
   }
 
-  private Expr call() {
-    var expr = this.primary();
+  private Expr binary(Expr left, Token operator) {
+    var right = this.expression(POWER[operator.type().ordinal()] + 1);
 
-    while (true) {
-      if (match(TokenType.LEFT_PAREN)) {
-        expr = finishCall(expr);
-      } else if (match(TokenType.DOT)) {
-        var name = consume(TokenType.IDENTIFIER, "Expect property name after '.'.");
-        expr = new Expr.Get(expr, name);
-      } else {
-        break;
-      }
-    }
-
-    return expr;
+    return new Expr.Binary(left, operator, right);
   }
 
-  private Expr finishCall(Expr callee) {
-    var args = new ArrayList<Expr>(5);
-
-    if (!check(TokenType.RIGHT_PAREN)) {
-      do {
-        if (args.size() >= 255) {
-          error(peek(), "Can't have more than 255 arguments.");
-        }
-        args.add(this.expression());
-      } while (match(TokenType.COMMA));
-    }
-
-    var paren = consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.");
-
-    return new Expr.Call(callee, paren, args);
+  private Expr or(Expr left, Token operator) {
+    return new Expr.Logical(left, operator, this.expression(Power.OR + 1));
   }
 
-  private Expr primary() {
-    if (match(TokenType.FALSE)) {
-      return new Expr.Literal(false, this.previous().position());
-    }
-
-    if (match(TokenType.THIS)) {
-      return new Expr.This(this.previous());
-    }
-
-    if (match(TokenType.TRUE)) {
-      return new Expr.Literal(true, this.previous().position());
-    }
-
-    if (match(TokenType.NIL)) {
-      return new Expr.Literal(null, this.previous().position());
-    }
-
-    if (match(TokenType.NUMBER, TokenType.STRING)) {
-      return new Expr.Literal(this.previous().literal(), this.previous().position());
-    }
-
-    if (match(TokenType.EQUAL)) {
-      return new Expr.Variable(this.previous());
-    }
-
-    if (match(TokenType.FN)) {
-      return this.exprFn("Lambda");
-    }
-
-    if (match(TokenType.LEFT_PAREN)) {
-      var expr = this.expression();
+  private Expr and(Expr left, Token operator) {
+    return new Expr.Logical(left, operator, this.expression(Power.AND));
+  }
 
-      this.consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+  private Expr ternary(Expr condition, Token operator) {
+    var onTrue = this.expression();
 
-      return new Expr.Grouping(expr);
+    if (!match(TokenType.COLON)) {
+      throw this.error(this.peek(), "Expected ternary split :");
     }
 
-    if (match(TokenType.IDENTIFIER)) {
-      return new Expr.Variable(this.previous());
-    }
+    var onFalse = this.expression();
 
-    throw this.error(this.peek(), "Expected expression.");
+    return new Expr.Ternary(condition, onTrue, onFalse);
   }
 
-  private Expr findBinaryMatch(ExprFunc func, TokenType... matches) {
-    var expr = func.expr();
-
-    while (match(matches)) {
-      var operator = previous();
-      var right = func.expr();
-
-      expr = new Expr.Binary(expr, operator, right);
+  private Expr assignment(Expr target, Token token) {
+    if (!(target instanceof Expr.Variable || target instanceof Expr.Get)) {
+      throw this.error(token, "Invalid assignment target");
     }
 
-    return expr;
-  }
-
-  private Expr or() {
-    var expr = and();
+    var value = this.expression(Power.ASSIGNMENT);
+    var operator =
+        switch (token.type()) {
+          case STAR_EQUAL -> new Token(TokenType.STAR, "*", null, token.position());
+          case SLASH_EQUAL -> new Token(TokenType.SLASH, "/", null, token.position());
+          case MINUS_EQUAL -> new Token(TokenType.MINUS, "-", null, token.position());
+          case PLUS_EQUAL -> new Token(TokenType.PLUS, "+", null, token.position());
+          default -> null;
+        };
 
-    while (match(TokenType.OR)) {
-      var operator = previous();
-      var right = and();
-
-      expr = new Expr.Logical(expr, operator, right);
+    if (target instanceof Expr.Variable variable) {
+      return operator != null
+          ? new Expr.CompoundAssign(variable.name, operator, value)
+          : new Expr.Assign(variable.name, value);
     }
 
-    return expr;
+    var get = (Expr.Get) target;
+    return operator != null
+        ? new Expr.CompoundSet(get.object, get.name, operator, value)
+        : new Expr.Set(get.object, get.name, value);
   }
 
-  private Expr and() {
-    var expr = this.equality();
-
-    while (match(TokenType.AND)) {
-      var operator = previous();
-      var right = and();
-
-      expr = new Expr.Logical(expr, operator, right);
-    }
+  private Expr property(Expr object, Token dot) {
+    var name = consume(TokenType.IDENTIFIER, "Expect property name after '.'.");
 
-    return expr;
+    return new Expr.Get(object, name);
   }
 
-  private Expr ternary() {
-    var expr = or();
-
-    if (match(TokenType.TERNARY)) {
-      var onTrue = this.expression();
-
-      if (match(TokenType.COLON)) {
-        var onFalse = this.expression();
+  private Expr finishCall(Expr callee, Token paren) {
+    var args = new ArrayList<Expr>(5);
 
-        return new Expr.Ternary(expr, onTrue, onFalse);
-      } else {
-        throw this.error(this.peek(), "Expected ternary split :");
-      }
+    if (!check(TokenType.RIGHT_PAREN)) {
+      do {
+        if (args.size() >= 255) {
+          error(peek(), "Can't have more than 255 arguments.");
+        }
+        args.add(this.expression());
+      } while (match(TokenType.COMMA));
     }
 
-    return expr;
+    var closing = consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.");
+
+    return new Expr.Call(callee, closing, args);
   }
 
   private Token consume(TokenType type, String msg) {
-    if (this.check(type)) return this.advance();
+    if (this.check(type)) {
+      this.advance();
+      return this.previous();
+    }
 
     throw error(this.peek(), msg);
   }
 
-  private boolean match(TokenType... types) {
-    for (var type : types) {
-      if (check(type)) {
-        advance();
-        return true;
-      }
-    }
+  private boolean match(TokenType type) {
+    if (!check(type)) return false;
 
-    return false;
+    advance();
+    return true;
   }
 
   private boolean check(TokenType type) {
     if (this.isAtEnd()) return false;
 
-    return this.peek().type() == type;
+    return tokens.peekType() == type;
   }
 
-  private boolean isAtEnd() {
-    return this.peek().type() == TokenType.EOF;
+  boolean isAtEnd() {
+    return tokens.peekType() == TokenType.EOF;
   }
 
-  private Token advance() {
-    if (!this.isAtEnd()) current++;
-
-    return this.previous();
+  private void advance() {
+    if (!this.isAtEnd()) tokens.advance();
   }
 
   private Token peek() {
-    return tokens.get(current);
+    return tokens.peek();
   }
 
-  private Token previous() {
-    return tokens.get(current - 1);
+  Token previous() {
+    return tokens.previous();
   }
 
   private ParseException error(Token token, String message) {
@@ -539,7 +577,7 @@ public class Parser {
     while (!this.isAtEnd()) {
       if (previous().type() == TokenType.SEMICOLON) return;
 
-      switch (this.peek().type()) {
+      switch (tokens.peekType()) {
         case CLASS:
         case FOR:
         case FN:
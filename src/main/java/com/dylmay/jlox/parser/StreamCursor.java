@@ -0,0 +1,52 @@
+package com.dylmay.jlox.parser;
+
+import com.dylmay.jlox.assets.Token;
+import com.dylmay.jlox.assets.TokenType;
+import com.dylmay.jlox.lexer.TokenStream;
+
+/**
+ * Lookahead window over a {@link TokenStream}. Tokens are pulled on demand and only the last few
+ * are kept alive in a ring buffer, which is all the parser ever looks at.
+ */
+class StreamCursor implements TokenCursor {
+  private static final int WINDOW = 4;
+  private static final int MASK = WINDOW - 1;
+
+  private final TokenStream stream;
+  private final Token[] window;
+
+  private int current;
+  private int fetched;
+
+  StreamCursor(TokenStream stream) {
+    this.stream = stream;
+    this.window = new Token[WINDOW];
+    this.current = 0;
+    this.fetched = 0;
+  }
+
+  @Override
+  public TokenType peekType() {
+    return this.peek().type();
+  }
+
+  @Override
+  public Token peek() {
+    while (this.fetched <= this.current) {
+      this.window[this.fetched++ & MASK] = this.stream.next();
+    }
+
+    return this.window[this.current & MASK];
+  }
+
+  @Override
+  public Token previous() {
+    return this.window[(this.current - 1) & MASK];
+  }
+
+  @Override
+  public void advance() {
+    this.peek();
+    this.current++;
+  }
+}
@@ -0,0 +1,14 @@
+package com.dylmay.jlox.parser;
+
+import com.dylmay.jlox.assets.Token;
+import com.dylmay.jlox.assets.TokenType;
+
+interface TokenCursor {
+  TokenType peekType();
+
+  Token peek();
+
+  Token previous();
+
+  void advance();
+}
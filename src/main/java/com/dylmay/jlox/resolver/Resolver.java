@@ -9,19 +9,22 @@ import com.dylmay.jlox.assets.Expr.Literal;
 import com.dylmay.jlox.assets.Expr.Logical;
 import com.dylmay.jlox.assets.Expr.Ternary;
 import com.dylmay.jlox.assets.Expr.Unary;
+import com.dylmay.jlox.assets.LazyBody;
 import com.dylmay.jlox.assets.Stmt;
 import com.dylmay.jlox.assets.Stmt.Break;
 import com.dylmay.jlox.assets.Stmt.Class;
 import com.dylmay.jlox.assets.Stmt.Continue;
 import com.dylmay.jlox.assets.Stmt.Expression;
+import com.dylmay.jlox.assets.Stmt.For;
 import com.dylmay.jlox.assets.Stmt.If;
 import com.dylmay.jlox.assets.Stmt.Return;
 import com.dylmay.jlox.assets.Stmt.While;
 import com.dylmay.jlox.assets.Token;
 import com.dylmay.jlox.error.ErrorMessage;
 import com.dylmay.jlox.error.LoxErrorHandler;
-import com.dylmay.jlox.interpreter.Interpreter;
+import com.dylmay.jlox.util.RuntimeError;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
@@ -30,8 +33,8 @@ import java.util.Map;
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   private static final LoxErrorHandler ERR_HNDLR = LoxErrorHandler.getInstance(Resolver.class);
 
-  private final Interpreter interpreter;
   private final Deque<Map<String, VariableDefine>> scopes;
+  private final List<String> topLevel;
   private boolean isStatic;
 
   private FunctionType curFunction = FunctionType.NONE;
@@ -50,10 +53,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     CLASS,
   }
 
-  public Resolver(Interpreter interpreter) {
-    this.interpreter = interpreter;
+  public Resolver() {
     this.scopes = new ArrayDeque<>();
     this.scopes.push(new HashMap<>());
+    this.topLevel = new ArrayList<>();
     this.isStatic = false;
   }
 
@@ -61,14 +64,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   public Void visitBlockStmt(Stmt.Block stmt) {
     beginScope();
     resolve(stmt.stmts);
-    endScope();
+    stmt.slots = endScope();
 
     return null;
   }
 
   @Override
   public Void visitVarStmt(Stmt.Var stmt) {
-    declare(stmt.name, stmt.mutable);
+    stmt.slot = declare(stmt.name, stmt.mutable);
     if (stmt.initializer != null) {
       resolve(stmt.initializer);
     }
@@ -87,27 +90,42 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
           new ErrorMessage().message("Can't read local variable in its own initializer."));
     }
 
-    resolveLocal(expr, expr.name);
+    expr.depth = resolveLocal(expr.name);
+    expr.slot = slotAt(expr.depth, expr.name);
 
     return null;
   }
 
   @Override
-  @SuppressWarnings("nullness")
   public Void visitAssignExpr(Expr.Assign expr) {
     resolve(expr.value);
-    resolveLocal(expr, expr.name);
+    expr.depth = resolveLocal(expr.name);
+    expr.slot = slotAt(expr.depth, expr.name);
+    checkMutable(expr.name);
+
+    return null;
+  }
+
+  @Override
+  public Void visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    resolve(expr.value);
+    expr.depth = resolveLocal(expr.name);
+    expr.slot = slotAt(expr.depth, expr.name);
+    checkMutable(expr.name);
 
-    if (this.scopes.peek().containsKey(expr.name.lexeme())
-        && !this.scopes.peek().get(expr.name.lexeme()).isMutable) {
+    return null;
+  }
+
+  @SuppressWarnings("nullness")
+  private void checkMutable(Token name) {
+    if (this.scopes.peek().containsKey(name.lexeme())
+        && !this.scopes.peek().get(name.lexeme()).isMutable) {
       ERR_HNDLR.report(
           new ErrorMessage()
-              .where(expr.name.lexeme())
-              .position(expr.name.position())
+              .where(name.lexeme())
+              .position(name.position())
               .message("mutable variables must be declared with 'let mut'."));
     }
-
-    return null;
   }
 
   @Override
@@ -161,6 +179,37 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  @SuppressWarnings("nullness")
+  public Void visitForStmt(For stmt) {
+    var parentFn = this.curFunction;
+
+    beginScope();
+    if (stmt.initializer != null) {
+      resolve(stmt.initializer);
+    }
+
+    // the loop variable has always been assignable from the body and increment
+    if (stmt.initializer instanceof Stmt.Var counter) {
+      this.scopes.peek().get(counter.name.lexeme()).isMutable = true;
+    }
+
+    this.curFunction = FunctionType.WHILE;
+    resolve(stmt.condition);
+
+    if (stmt.bodyScoped) beginScope();
+    resolve(stmt.body);
+    if (stmt.bodyScoped) stmt.bodySlots = endScope();
+
+    if (stmt.increment != null) {
+      resolve(stmt.increment);
+    }
+
+    this.curFunction = parentFn;
+    stmt.slots = endScope();
+    return null;
+  }
+
   @Override
   public Void visitBreakStmt(Break stmt) {
     if (this.curFunction != FunctionType.WHILE) {
@@ -252,7 +301,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     expr.accept(this);
   }
 
-  private void resolveLocal(Expr expr, Token name) {
+  /** How many scopes out the name was declared, or -1 if it must be a global. */
+  private int resolveLocal(Token name) {
     var scopeIter = scopes.iterator();
 
     int depth = 0;
@@ -260,40 +310,101 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       var scope = scopeIter.next();
 
       if (scope.containsKey(name.lexeme())) {
-        interpreter.resolve(expr, depth);
-        return;
+        return depth;
       }
 
       depth++;
     }
+
+    return -1;
+  }
+
+  /** The name's slot in the frame of the scope depth out, or -1 if it is looked up by name. */
+  @SuppressWarnings("nullness")
+  private int slotAt(int depth, Token name) {
+    if (depth < 0) return -1;
+
+    var scopeIter = scopes.iterator();
+
+    for (int i = 0; i < depth; i++) {
+      scopeIter.next();
+    }
+
+    return scopeIter.next().get(name.lexeme()).slot;
   }
 
   private void resolveFunction(Expr.Fn func, FunctionType type) {
+    if (func.body instanceof LazyBody lazy && !lazy.isLoaded() && this.scopes.size() == 1) {
+      this.resolveLater(func, lazy, type);
+    } else {
+      func.slots = this.resolveFunction(func.parms, func.body, type);
+    }
+  }
+
+  /** Resolves a function's parameters and body in one scope, returning its frame size. */
+  private int resolveFunction(List<Token> parms, List<Stmt> body, FunctionType type) {
     var parentFunction = this.curFunction;
     this.curFunction = type;
 
     beginScope();
-    for (var parm : func.parms) {
+    for (var parm : parms) {
       declare(parm, false);
       define(parm);
     }
-    resolve(func.body);
-    endScope();
+    resolve(body);
+    var slots = endScope();
 
     this.curFunction = parentFunction;
+    return slots;
+  }
+
+  /**
+   * Resolves a top-level function's body once it is parsed, seeing only the top-level names
+   * declared before it as it would have now.
+   */
+  @SuppressWarnings("nullness")
+  private void resolveLater(Expr.Fn func, LazyBody body, FunctionType type) {
+    var names = this.topLevel;
+    var visible = names.size();
+    var inStatic = this.isStatic;
+
+    body.andThen(
+        stmts -> {
+          var resolver = new Resolver();
+          var scope = resolver.scopes.peek();
+
+          for (var name : names.subList(0, visible)) {
+            scope.put(name, new VariableDefine(true, false, -1));
+          }
+
+          resolver.isStatic = inStatic;
+          func.slots = resolver.resolveFunction(func.parms, stmts, type);
+
+          if (ERR_HNDLR.hasError()) {
+            throw new RuntimeError(func.pos, "Function body failed to resolve");
+          }
+
+          return stmts;
+        });
   }
 
   private void beginScope() {
     this.scopes.push(new HashMap<>());
   }
 
-  private void endScope() {
-    this.scopes.pop();
+  /** Closes the innermost scope, returning how many slots its frame needs. */
+  @SuppressWarnings("nullness")
+  private int endScope() {
+    return this.scopes.pop().size();
   }
 
+  /**
+   * Declares the name in the innermost scope, returning the slot it takes in that scope's frame,
+   * or -1 at top level where names are kept by name.
+   */
   @SuppressWarnings("nullness")
-  private void declare(Token name, boolean isMutable) {
-    if (scopes.isEmpty()) return;
+  private int declare(Token name, boolean isMutable) {
+    if (scopes.isEmpty()) return -1;
 
     var scope = scopes.peek();
     if (scope.containsKey(name.lexeme())) {
@@ -304,7 +415,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
               .message("Already a variable with this name in this scope"));
     }
 
-    scopes.peek().put(name.lexeme(), new VariableDefine(false, isMutable));
+    if (scopes.size() == 1 && !scope.containsKey(name.lexeme())) {
+      this.topLevel.add(name.lexeme());
+    }
+
+    var slot = scopes.size() == 1 ? -1 : scope.size();
+    scope.put(name.lexeme(), new VariableDefine(false, isMutable, slot));
+
+    return slot;
   }
 
   @SuppressWarnings("nullness")
@@ -314,14 +432,19 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     if (scopes.peek().containsKey(name.lexeme())) {
       scopes.peek().get(name.lexeme()).isDefined = true;
     } else {
-      scopes.peek().put(name.lexeme(), new VariableDefine(true, false));
+      if (scopes.size() == 1) {
+        this.topLevel.add(name.lexeme());
+      }
+
+      var slot = scopes.size() == 1 ? -1 : scopes.peek().size();
+      scopes.peek().put(name.lexeme(), new VariableDefine(true, false, slot));
     }
   }
 
   @Override
   @SuppressWarnings("nullness")
   public Void visitClassStmt(Class stmt) {
-    declare(stmt.name, false);
+    stmt.slot = declare(stmt.name, false);
     var lastClass = this.curClass;
 
     if (stmt.superclass != null) {
@@ -337,7 +460,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     beginScope();
     this.curClass = ClassType.CLASS;
-    scopes.peek().put("self", new VariableDefine(true, false));
+    scopes.peek().put("self", new VariableDefine(true, false, 0));
 
     for (var decl : stmt.decls) {
       this.isStatic = decl.isStatic;
@@ -377,9 +500,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitCompoundSetExpr(Expr.CompoundSet expr) {
+    resolve(expr.value);
+    resolve(expr.object);
+    return null;
+  }
+
   @Override
   public Void visitThisExpr(Expr.This expr) {
-    resolveLocal(expr, expr.keyword);
+    expr.depth = resolveLocal(expr.keyword);
+    expr.slot = slotAt(expr.depth, expr.keyword);
     if (curClass == ClassType.NONE) {
       ERR_HNDLR.report(
           new ErrorMessage()
@@ -398,10 +529,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   private static class VariableDefine {
     boolean isDefined;
     boolean isMutable;
+    final int slot;
 
-    public VariableDefine(boolean isDefined, boolean isMutable) {
+    public VariableDefine(boolean isDefined, boolean isMutable, int slot) {
       this.isDefined = isDefined;
       this.isMutable = isMutable;
+      this.slot = slot;
     }
   }
 }
@@ -1,11 +1,9 @@
 package com.dylmay.jlox.util;
 
-import com.dylmay.jlox.assets.Position;
-
 public class RuntimeError extends RuntimeException {
-  public final transient Position position;
+  public final int position;
 
-  public RuntimeError(Position position, String message) {
+  public RuntimeError(int position, String message) {
     super(message);
     this.position = position;
   }
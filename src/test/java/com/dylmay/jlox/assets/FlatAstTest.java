@@ -0,0 +1,60 @@
+package com.dylmay.jlox.assets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.parser.Parser;
+import com.dylmay.jlox.resolver.Resolver;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class FlatAstTest {
+  private static final String SOURCE =
+      """
+      class A { let f = fn() { return this; }; }
+      class B : A { let g = fn(x) { let mut y = x; y *= 2; this.z += y; return y; }; }
+      let mut total = 0;
+      for let mut i = 0; i < 3; i += 1 { if i == 1 { continue; } total += i; }
+      let s = !true ? 'text' : 'other';
+      """;
+
+  private static List<Stmt> resolved(String source) {
+    var stmts = new Parser(new Lexer(source)).parse();
+    new Resolver().resolve(stmts);
+    return stmts;
+  }
+
+  @Test
+  void testWalksNodes() {
+    var ast = FlatAst.encode(resolved("let mut a = 1; a += a * 2;"), 0);
+    var root = ast.root();
+
+    assertEquals(FlatAst.LIST, ast.kind(root));
+    assertEquals(2, ast.operand(root, 0));
+
+    var assign = ast.operand(ast.operand(root, 2), 0);
+    assertEquals(FlatAst.COMPOUND_ASSIGN, ast.kind(assign));
+    assertEquals("a", ast.lexeme(ast.operand(assign, 0)));
+    assertEquals(TokenType.PLUS, ast.tokenType(ast.operand(assign, 1)));
+
+    var product = ast.operand(assign, 2);
+    assertEquals(FlatAst.BINARY, ast.kind(product));
+    assertEquals(2d, ast.constant(ast.operand(ast.operand(product, 2), 0)));
+  }
+
+  @Test
+  void testRoundTrip() {
+    var stmts = resolved(SOURCE);
+    var ast = FlatAst.encode(stmts, 0);
+    var decoded = ast.decode();
+
+    assertEquals(stmts.size(), decoded.size());
+    assertEquals(stmts.get(2), decoded.get(2));
+    assertEquals(stmts.get(4), decoded.get(4));
+    assertEquals(ast.toBytes(), FlatAst.encode(decoded, 0).toBytes());
+
+    var read = FlatAst.fromBytes(ast.toBytes(), 100);
+    var moved = (Stmt.Var) read.decode().get(2);
+    assertEquals(((Stmt.Var) stmts.get(2)).name.position() + 100, moved.name.position());
+  }
+}
@@ -0,0 +1,91 @@
+package com.dylmay.jlox.assets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.parser.Document;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class LineMapTest {
+  @Test
+  void testReleasedPositionsAreReused() {
+    final var source = (" ".repeat(10_000_000) + "\nlet x").getBytes(StandardCharsets.UTF_8);
+    final var registered = LineMap.registered();
+
+    var firstBase = -1;
+
+    // enough sources of this size to run out of positions if none were given back
+    for (int i = 0; i < 250; i++) {
+      var lexer = new Lexer(source);
+      var tokens = lexer.scanTokens();
+      var lines = lexer.lineMap();
+
+      if (i == 0) firstBase = lines.base();
+
+      assertEquals(firstBase, lines.base());
+      assertEquals(new Position(2, 4), LineMap.resolve(tokens.get(1).position()));
+
+      lines.release();
+      assertNull(LineMap.find(tokens.get(1).position()));
+    }
+
+    assertEquals(registered, LineMap.registered());
+  }
+
+  @Test
+  void testDocumentsReleaseReplacedSegments() {
+    final var registered = LineMap.registered();
+
+    try (var doc = new Document("let a = 1;\nfn f(x) { return x; }\n")) {
+      var first = (Stmt.Var) doc.statements().get(0);
+
+      for (int i = 0; i < 1000; i++) {
+        doc.edit(8, 1, String.valueOf(i % 10));
+      }
+
+      assertEquals(registered + 2, LineMap.registered());
+      assertNull(LineMap.find(first.name.position()));
+
+      var renamed = (Stmt.Var) doc.statements().get(0);
+      var f = (Stmt.Var) doc.statements().get(1);
+      assertEquals(new Position(1, 4), LineMap.resolve(renamed.name.position()));
+      assertEquals(new Position(2, 3), LineMap.resolve(f.name.position()));
+    }
+
+    assertEquals(registered, LineMap.registered());
+  }
+
+  @Test
+  void testFillsGapsFirst() {
+    var first = LineMap.create(100);
+    var second = LineMap.create(100);
+    var third = LineMap.create(100);
+
+    second.release();
+    var small = LineMap.create(50);
+    var large = LineMap.create(200);
+
+    // first fit, so never past the gap, though an earlier gap from another test may fit too
+    assertTrue(small.base() <= second.base());
+    assertTrue(large.base() < second.base() || large.base() > third.base());
+
+    // an unknown length takes half of what is left, and hands back what it didn't use
+    var open = LineMap.create(-1);
+    open.close(10);
+    assertEquals(open, LineMap.find(open.base() + 10));
+    assertNull(LineMap.find(open.base() + 11));
+
+    for (var lines : new LineMap[] {first, third, small, large, open}) {
+      lines.release();
+    }
+  }
+
+  @Test
+  void testRunsOutLoudly() {
+    assertThrows(IllegalStateException.class, () -> LineMap.create(Integer.MAX_VALUE));
+  }
+}
@@ -0,0 +1,101 @@
+package com.dylmay.jlox.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.FlatAst;
+import com.dylmay.jlox.assets.LineMap;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.parser.Parser;
+import com.dylmay.jlox.resolver.Resolver;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class AstCacheTest {
+  private static final String SOURCE =
+      """
+      class A { let f = fn() { return this; }; }
+      class B : A { let g = fn(x) { let mut y = x; y *= 2; this.z += y; return y; }; }
+      let mut total = 0;
+      for let mut i = 0; i < 3; i += 1 { if i == 1 { continue; } total += i; }
+      let s = 'text' + nil;
+      """;
+
+  private static ByteBuffer encode(List<Stmt> stmts, int base) {
+    return FlatAst.encode(stmts, base).toBytes();
+  }
+
+  @Test
+  void testRoundTrip() throws IOException {
+    var source = ByteBuffer.wrap(SOURCE.getBytes(StandardCharsets.UTF_8));
+    var lexer = new Lexer(source.duplicate());
+    var stmts = new Parser(lexer).parse();
+    new Resolver().resolve(stmts);
+
+    var cache = new AstCache(Files.createTempDirectory("jlox"), "test");
+    var key = cache.key(source);
+    cache.store(key, source.remaining(), lexer.lineMap(), stmts);
+
+    var loaded = cache.load(key, source.remaining());
+    assertNotNull(loaded);
+
+    var lines = LineMap.find(((Stmt.Var) loaded.get(2)).name.position());
+    assertNotNull(lines);
+    assertNotEquals(lexer.lineMap().base(), lines.base());
+    assertEquals(encode(stmts, lexer.lineMap().base()), encode(loaded, lines.base()));
+    assertEquals(LineMap.resolve(lexer.lineMap().base() + 50), LineMap.resolve(lines.base() + 50));
+
+    var loop = (Stmt.For) loaded.get(3);
+    var increment = (Expr.CompoundAssign) loop.increment;
+    assertEquals(0, increment.depth);
+    assertEquals(0, increment.slot);
+    assertEquals(1, loop.slots);
+  }
+
+  @Test
+  void testMisses() throws IOException {
+    var source = ByteBuffer.wrap(SOURCE.getBytes(StandardCharsets.UTF_8));
+    var lexer = new Lexer(source.duplicate());
+    var stmts = new Parser(lexer).parse();
+    var dir = Files.createTempDirectory("jlox");
+    var cache = new AstCache(dir, "test");
+    var key = cache.key(source);
+
+    assertNull(cache.load(key, source.remaining()));
+    assertNotEquals(key, new AstCache(dir, "other").key(source));
+
+    cache.store(key, source.remaining(), lexer.lineMap(), stmts);
+    assertNull(cache.load(key, source.remaining() + 1));
+
+    Files.write(dir.resolve(key + ".ast"), new byte[] {1, 2, 3});
+    assertNull(cache.load(key, source.remaining()));
+  }
+
+  @Test
+  void testSkipsWritesThatFail() throws IOException {
+    var source = ByteBuffer.wrap(SOURCE.getBytes(StandardCharsets.UTF_8));
+    var lexer = new Lexer(source.duplicate());
+    var stmts = new Parser(lexer).parse();
+
+    // a home that is a file rather than a directory, so nothing can be made under it
+    var home = Files.createTempFile("jlox", ".home");
+    var cache = new AstCache(home.resolve(".cache").resolve("jlox"), "test");
+    var key = cache.key(source);
+
+    cache.store(key, source.remaining(), lexer.lineMap(), stmts);
+    assertNull(cache.load(key, source.remaining()));
+
+    var taken = new AstCache(home, "test");
+    taken.store(key, source.remaining(), lexer.lineMap(), stmts);
+    assertNull(taken.load(key, source.remaining()));
+    assertEquals(0, Files.size(home));
+  }
+}
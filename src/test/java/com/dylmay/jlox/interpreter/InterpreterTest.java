@@ -0,0 +1,217 @@
+package com.dylmay.jlox.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.Item;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.optimizer.CallInliner;
+import com.dylmay.jlox.optimizer.ConstantFolder;
+import com.dylmay.jlox.optimizer.DeadCodeEliminator;
+import com.dylmay.jlox.optimizer.LoopInvariantHoister;
+import com.dylmay.jlox.parser.Parser;
+import com.dylmay.jlox.resolver.Resolver;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class InterpreterTest {
+  /** Notes the kind of every node run, and that each kind always comes from the same class. */
+  private static final class Recording extends Interpreter {
+    final Map<Integer, Class<?>> exprKinds = new HashMap<>();
+    final Map<Integer, Class<?>> stmtKinds = new HashMap<>();
+
+    @Override
+    Item evaluate(Expr expr) {
+      var type = expr.getClass();
+      assertEquals(type, this.exprKinds.computeIfAbsent(expr.kind, k -> type));
+      return super.evaluate(expr);
+    }
+
+    @Override
+    Void execute(Stmt stmt) {
+      var type = stmt.getClass();
+      assertEquals(type, this.stmtKinds.computeIfAbsent(stmt.kind, k -> type));
+      return super.execute(stmt);
+    }
+  }
+
+  private static List<Stmt> resolved(String source) {
+    var stmts = new Parser(new Lexer(source)).parse();
+    new Resolver().resolve(stmts);
+    return stmts;
+  }
+
+  /** Runs the source through every pass, as the command line does by default. */
+  private static List<Stmt> compiled(String source) {
+    var stmts = new Parser(new Lexer(source)).parse();
+    stmts = new CallInliner().inline(stmts);
+    stmts = new ConstantFolder().fold(stmts);
+    stmts = new LoopInvariantHoister().hoist(stmts);
+    new Resolver().resolve(stmts);
+    return new DeadCodeEliminator().prune(stmts);
+  }
+
+  /** What the statements print, followed by anything reported, one line each. */
+  private static String run(Interpreter interpreter, List<Stmt> stmts) {
+    var out = System.out;
+    var err = System.err;
+    var printed = new ByteArrayOutputStream();
+
+    try (var capture = new PrintStream(printed, true, StandardCharsets.UTF_8)) {
+      System.setOut(capture);
+      System.setErr(capture);
+      interpreter.interpret(stmts);
+    } finally {
+      System.setOut(out);
+      System.setErr(err);
+    }
+
+    return printed.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+  }
+
+  /** What the source prints, which must not depend on whether the optimizers ran. */
+  private static String run(String source) {
+    var output = run(new Interpreter(), compiled(source));
+    assertEquals(run(new Interpreter(), resolved(source)), output);
+    return output;
+  }
+
+  @Test
+  void testClosuresCaptureLoopVariables() {
+    var source =
+        """
+        let mut a = nil;
+        let mut b = nil;
+        let mut c = nil;
+        for let mut i = 0; i < 3; i += 1 {
+          let j = i;
+          let f = fn() { return j * 10 + i; };
+          if i == 0 { a = f; } else if i == 1 { b = f; } else { c = f; }
+        }
+        print(a());
+        print(b());
+        print(c());
+        let mut k = 0;
+        let mut last = nil;
+        while k < 2 { let v = k; if k == 0 { last = fn() { return v; }; } k += 1; }
+        print(last());
+        """;
+
+    // each pass through the body has its own frame, while the loop variable is shared
+    assertEquals("3\n13\n23\n0\n", run(source));
+  }
+
+  @Test
+  void testNestedFunctionsReadShadowedLocals() {
+    var source =
+        """
+        let x = "global";
+        fn outer() {
+          let x = "outer";
+          fn middle() {
+            let y = x;
+            let x = "middle";
+            fn inner() { return x + y; }
+            return inner();
+          }
+          return middle() + x;
+        }
+        print(outer());
+        print(x);
+        {
+          let a = 1;
+          {
+            let b = a + 1;
+            let a = 5;
+            print(a + b);
+          }
+          print(a);
+        }
+        """;
+
+    assertEquals("middleouterouter\nglobal\n7\n1\n", run(source));
+  }
+
+  @Test
+  void testSelfInBoundMethods() {
+    var source =
+        """
+        class Counter {
+          let mut n = 0;
+          fn add(k) { self.n += k; return self; }
+          fn adder() { return fn(k) { return self.add(k).n; }; }
+        }
+        let c = Counter();
+        let add = c.add;
+        add(2);
+        let f = c.adder();
+        print(f(3));
+        let d = Counter();
+        print(d.adder()(1));
+        print(c.n);
+        """;
+
+    assertEquals("5\n1\n5\n", run(source));
+  }
+
+  @Test
+  void testGlobalsRedefinedAtThePrompt() {
+    var interpreter = new Interpreter();
+
+    // each entry at the prompt is compiled on its own and run by the same interpreter
+    assertEquals("", run(interpreter, compiled("let mut g = 1; fn show() { return g; }")));
+    assertEquals("", run(interpreter, compiled("fn call() { return later(); }")));
+    assertEquals("2\n", run(interpreter, compiled("g = 2; print(show());")));
+
+    var late = "fn later() { return \"late\"; } print(call());";
+    assertEquals("late\n", run(interpreter, compiled(late)));
+
+    var redefined = run(interpreter, compiled("let g = 3; print(show());"));
+    assertTrue(redefined.contains("Variable 'g' is not defined."));
+    assertEquals("2\n", run(interpreter, compiled("print(show());")));
+
+    run(interpreter, compiled("class K { fn v() { return 1; } } let k = K();"));
+    var replaced = "class K { fn v() { return 2; } } print(K().v()); print(k.v());";
+    assertEquals("2\n1\n", run(interpreter, compiled(replaced)));
+  }
+
+  @Test
+  void testRunsEveryKind() {
+    var source =
+        """
+        class Box {
+          let mut v = 1;
+          fn grow(n) { self.v += n; return self.v; }
+        }
+        fn twice(x) { return x * 2; }
+        let b = Box();
+        b.v = 2;
+        let mut total = 0;
+        for let mut i = 0; i < 5; i += 1 {
+          if i == 1 { continue; }
+          if i == 4 { break; }
+          total = total + b.grow(i);
+        }
+        let mut n = 3;
+        while n > 0 { n -= 1; }
+        {
+          let neg = -(total);
+          print(neg < 0 and true ? twice(neg) : nil);
+        }
+        print(n);
+        """;
+    var interpreter = new Recording();
+
+    // each kind has its own case in the interpreter's switch, and an unknown one fails loudly
+    assertEquals("-26\n0\n", run(interpreter, resolved(source)));
+    assertEquals(Expr.KIND_COUNT, interpreter.exprKinds.size());
+    assertEquals(Stmt.KIND_COUNT, interpreter.stmtKinds.size());
+  }
+}
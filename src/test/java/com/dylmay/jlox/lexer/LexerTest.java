@@ -2,12 +2,23 @@ package com.dylmay.jlox.lexer;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.dylmay.jlox.assets.LineMap;
 import com.dylmay.jlox.assets.Position;
 import com.dylmay.jlox.assets.Token;
 import com.dylmay.jlox.assets.TokenType;
 import com.dylmay.jlox.error.LoxErrorHandler;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 public class LexerTest {
@@ -16,27 +27,29 @@ public class LexerTest {
   void testSingleTokenization() {
     final var singleTokens = "( ) { } , . - + ; * / ! < > = ? :\n";
 
-    var lexerTokens = new Lexer(singleTokens).scanTokens();
+    var lexer = new Lexer(singleTokens);
+    var lexerTokens = lexer.scanTokens();
+    var lines = lexer.lineMap();
 
     Token[] expectedTokens = {
-      new Token(TokenType.LEFT_PAREN, "(", null, new Position(1, 0)),
-      new Token(TokenType.RIGHT_PAREN, ")", null, new Position(1, 2)),
-      new Token(TokenType.LEFT_BRACE, "{", null, new Position(1, 4)),
-      new Token(TokenType.RIGHT_BRACE, "}", null, new Position(1, 6)),
-      new Token(TokenType.COMMA, ",", null, new Position(1, 8)),
-      new Token(TokenType.DOT, ".", null, new Position(1, 10)),
-      new Token(TokenType.MINUS, "-", null, new Position(1, 12)),
-      new Token(TokenType.PLUS, "+", null, new Position(1, 14)),
-      new Token(TokenType.SEMICOLON, ";", null, new Position(1, 16)),
-      new Token(TokenType.STAR, "*", null, new Position(1, 18)),
-      new Token(TokenType.SLASH, "/", null, new Position(1, 20)),
-      new Token(TokenType.BANG, "!", null, new Position(1, 22)),
-      new Token(TokenType.LESS, "<", null, new Position(1, 24)),
-      new Token(TokenType.GREATER, ">", null, new Position(1, 26)),
-      new Token(TokenType.EQUAL, "=", null, new Position(1, 28)),
-      new Token(TokenType.TERNARY, "?", null, new Position(1, 30)),
-      new Token(TokenType.COLON, ":", null, new Position(1, 32)),
-      new Token(TokenType.EOF, "\n", null, new Position(2, 0))
+      new Token(TokenType.LEFT_PAREN, "(", null, lines.at(1, 0)),
+      new Token(TokenType.RIGHT_PAREN, ")", null, lines.at(1, 2)),
+      new Token(TokenType.LEFT_BRACE, "{", null, lines.at(1, 4)),
+      new Token(TokenType.RIGHT_BRACE, "}", null, lines.at(1, 6)),
+      new Token(TokenType.COMMA, ",", null, lines.at(1, 8)),
+      new Token(TokenType.DOT, ".", null, lines.at(1, 10)),
+      new Token(TokenType.MINUS, "-", null, lines.at(1, 12)),
+      new Token(TokenType.PLUS, "+", null, lines.at(1, 14)),
+      new Token(TokenType.SEMICOLON, ";", null, lines.at(1, 16)),
+      new Token(TokenType.STAR, "*", null, lines.at(1, 18)),
+      new Token(TokenType.SLASH, "/", null, lines.at(1, 20)),
+      new Token(TokenType.BANG, "!", null, lines.at(1, 22)),
+      new Token(TokenType.LESS, "<", null, lines.at(1, 24)),
+      new Token(TokenType.GREATER, ">", null, lines.at(1, 26)),
+      new Token(TokenType.EQUAL, "=", null, lines.at(1, 28)),
+      new Token(TokenType.TERNARY, "?", null, lines.at(1, 30)),
+      new Token(TokenType.COLON, ":", null, lines.at(1, 32)),
+      new Token(TokenType.EOF, "\n", null, lines.at(1, 33))
     };
 
     assertArrayEquals(expectedTokens, lexerTokens.toArray());
@@ -46,14 +59,16 @@ public class LexerTest {
   void testMultiTokenization() {
     final var multiTokens = "!= == >= <=\n";
 
-    var lexerTokens = new Lexer(multiTokens).scanTokens();
+    var lexer = new Lexer(multiTokens);
+    var lexerTokens = lexer.scanTokens();
+    var lines = lexer.lineMap();
 
     Token[] expectedTokens = {
-      new Token(TokenType.BANG_EQUAL, "!=", null, new Position(1, 0)),
-      new Token(TokenType.EQUAL_EQUAL, "==", null, new Position(1, 3)),
-      new Token(TokenType.GREATER_EQUAL, ">=", null, new Position(1, 6)),
-      new Token(TokenType.LESS_EQUAL, "<=", null, new Position(1, 9)),
-      new Token(TokenType.EOF, "\n", null, new Position(2, 0))
+      new Token(TokenType.BANG_EQUAL, "!=", null, lines.at(1, 0)),
+      new Token(TokenType.EQUAL_EQUAL, "==", null, lines.at(1, 3)),
+      new Token(TokenType.GREATER_EQUAL, ">=", null, lines.at(1, 6)),
+      new Token(TokenType.LESS_EQUAL, "<=", null, lines.at(1, 9)),
+      new Token(TokenType.EOF, "\n", null, lines.at(1, 11))
     };
 
     assertArrayEquals(expectedTokens, lexerTokens.toArray());
@@ -63,13 +78,15 @@ public class LexerTest {
   void testLiteralTokenization() {
     final var literalTokens = "Identifier123 12.345 \"string\"\n";
 
-    var lexerTokens = new Lexer(literalTokens).scanTokens();
+    var lexer = new Lexer(literalTokens);
+    var lexerTokens = lexer.scanTokens();
+    var lines = lexer.lineMap();
 
     Token[] expectedTokens = {
-      new Token(TokenType.IDENTIFIER, "Identifier123", null, new Position(1, 0)),
-      new Token(TokenType.NUMBER, "12.345", 12.345d, new Position(1, 14)),
-      new Token(TokenType.STRING, "\"string\"", "string", new Position(1, 21)),
-      new Token(TokenType.EOF, "\n", null, new Position(2, 0))
+      new Token(TokenType.IDENTIFIER, "Identifier123", null, lines.at(1, 0)),
+      new Token(TokenType.NUMBER, "12.345", 12.345d, lines.at(1, 14)),
+      new Token(TokenType.STRING, "\"string\"", "string", lines.at(1, 21)),
+      new Token(TokenType.EOF, "\n", null, lines.at(1, 29))
     };
 
     assertArrayEquals(expectedTokens, lexerTokens.toArray());
@@ -78,28 +95,30 @@ public class LexerTest {
   @Test
   void testKeywordTokenization() {
     final var keywordTokens =
-        "and class else false fn for if nil or print return super this true let while\n";
+        "and class else false fn for if nil or print return super self true let while\n";
 
-    var lexerTokens = new Lexer(keywordTokens).scanTokens();
+    var lexer = new Lexer(keywordTokens);
+    var lexerTokens = lexer.scanTokens();
+    var lines = lexer.lineMap();
 
     Token[] expectedTokens = {
-      new Token(TokenType.AND, "and", null, new Position(1, 0)),
-      new Token(TokenType.CLASS, "class", null, new Position(1, 4)),
-      new Token(TokenType.ELSE, "else", null, new Position(1, 10)),
-      new Token(TokenType.FALSE, "false", null, new Position(1, 15)),
-      new Token(TokenType.FN, "fn", null, new Position(1, 21)),
-      new Token(TokenType.FOR, "for", null, new Position(1, 24)),
-      new Token(TokenType.IF, "if", null, new Position(1, 28)),
-      new Token(TokenType.NIL, "nil", null, new Position(1, 31)),
-      new Token(TokenType.OR, "or", null, new Position(1, 35)),
-      new Token(TokenType.PRINT, "print", null, new Position(1, 38)),
-      new Token(TokenType.RETURN, "return", null, new Position(1, 44)),
-      new Token(TokenType.SUPER, "super", null, new Position(1, 51)),
-      new Token(TokenType.THIS, "this", null, new Position(1, 57)),
-      new Token(TokenType.TRUE, "true", null, new Position(1, 62)),
-      new Token(TokenType.LET, "let", null, new Position(1, 67)),
-      new Token(TokenType.WHILE, "while", null, new Position(1, 71)),
-      new Token(TokenType.EOF, "\n", null, new Position(2, 0))
+      new Token(TokenType.AND, "and", null, lines.at(1, 0)),
+      new Token(TokenType.CLASS, "class", null, lines.at(1, 4)),
+      new Token(TokenType.ELSE, "else", null, lines.at(1, 10)),
+      new Token(TokenType.FALSE, "false", null, lines.at(1, 15)),
+      new Token(TokenType.FN, "fn", null, lines.at(1, 21)),
+      new Token(TokenType.FOR, "for", null, lines.at(1, 24)),
+      new Token(TokenType.IF, "if", null, lines.at(1, 28)),
+      new Token(TokenType.NIL, "nil", null, lines.at(1, 31)),
+      new Token(TokenType.OR, "or", null, lines.at(1, 35)),
+      new Token(TokenType.IDENTIFIER, "print", null, lines.at(1, 38)),
+      new Token(TokenType.RETURN, "return", null, lines.at(1, 44)),
+      new Token(TokenType.SUPER, "super", null, lines.at(1, 51)),
+      new Token(TokenType.THIS, "self", null, lines.at(1, 57)),
+      new Token(TokenType.TRUE, "true", null, lines.at(1, 62)),
+      new Token(TokenType.LET, "let", null, lines.at(1, 67)),
+      new Token(TokenType.WHILE, "while", null, lines.at(1, 71)),
+      new Token(TokenType.EOF, "\n", null, lines.at(1, 76))
     };
 
     assertArrayEquals(expectedTokens, lexerTokens.toArray());
@@ -159,99 +178,306 @@ public class LexerTest {
 
         """;
 
-    var lexerTokens = new Lexer(loxTokens).scanTokens();
+    var lexer = new Lexer(loxTokens);
+    var lexerTokens = lexer.scanTokens();
+    var lines = lexer.lineMap();
 
     Token[] expectedTokens = {
-      new Token(TokenType.CLASS, "class", null, new Position(5, 0)),
-      new Token(TokenType.IDENTIFIER, "LoxCode", null, new Position(5, 6)),
-      new Token(TokenType.LEFT_BRACE, "{", null, new Position(5, 14)),
-      new Token(TokenType.FN, "fn", null, new Position(6, 2)),
-      new Token(TokenType.IDENTIFIER, "helloName", null, new Position(6, 5)),
-      new Token(TokenType.LEFT_PAREN, "(", null, new Position(6, 14)),
-      new Token(TokenType.IDENTIFIER, "name", null, new Position(6, 15)),
-      new Token(TokenType.RIGHT_PAREN, ")", null, new Position(6, 19)),
-      new Token(TokenType.LEFT_BRACE, "{", null, new Position(6, 21)),
-      new Token(TokenType.LET, "let", null, new Position(7, 4)),
-      new Token(TokenType.IDENTIFIER, "helloStr", null, new Position(7, 8)),
-      new Token(TokenType.EQUAL, "=", null, new Position(7, 17)),
-      new Token(TokenType.STRING, "'Hello'", "Hello", new Position(7, 19)),
-      new Token(TokenType.PLUS, "+", null, new Position(7, 27)),
-      new Token(TokenType.IDENTIFIER, "name", null, new Position(7, 29)),
-      new Token(TokenType.SEMICOLON, ";", null, new Position(7, 33)),
-      new Token(TokenType.RETURN, "return", null, new Position(9, 4)),
-      new Token(TokenType.IDENTIFIER, "helloStr", null, new Position(9, 11)),
-      new Token(TokenType.SEMICOLON, ";", null, new Position(9, 19)),
-      new Token(TokenType.RIGHT_BRACE, "}", null, new Position(10, 2)),
-      new Token(TokenType.FN, "fn", null, new Position(12, 2)),
-      new Token(TokenType.IDENTIFIER, "main", null, new Position(12, 5)),
-      new Token(TokenType.LEFT_PAREN, "(", null, new Position(12, 9)),
-      new Token(TokenType.RIGHT_PAREN, ")", null, new Position(12, 10)),
-      new Token(TokenType.LEFT_BRACE, "{", null, new Position(12, 12)),
-      new Token(TokenType.WHILE, "while", null, new Position(14, 4)),
-      new Token(TokenType.LEFT_PAREN, "(", null, new Position(14, 10)),
-      new Token(TokenType.TRUE, "true", null, new Position(14, 11)),
-      new Token(TokenType.RIGHT_PAREN, ")", null, new Position(14, 15)),
-      new Token(TokenType.PRINT, "print", null, new Position(15, 6)),
-      new Token(TokenType.IDENTIFIER, "helloWorld", null, new Position(15, 12)),
-      new Token(TokenType.LEFT_PAREN, "(", null, new Position(15, 22)),
-      new Token(TokenType.STRING, "'Dylan'", "Dylan", new Position(15, 23)),
-      new Token(TokenType.RIGHT_PAREN, ")", null, new Position(15, 30)),
-      new Token(TokenType.SEMICOLON, ";", null, new Position(15, 31)),
-      new Token(TokenType.IF, "if", null, new Position(17, 4)),
-      new Token(TokenType.LEFT_PAREN, "(", null, new Position(17, 7)),
-      new Token(TokenType.FALSE, "false", null, new Position(17, 8)),
-      new Token(TokenType.RIGHT_PAREN, ")", null, new Position(17, 13)),
-      new Token(TokenType.PRINT, "print", null, new Position(18, 6)),
-      new Token(TokenType.NIL, "nil", null, new Position(18, 12)),
-      new Token(TokenType.SEMICOLON, ";", null, new Position(18, 15)),
-      new Token(TokenType.RETURN, "return", null, new Position(20, 4)),
-      new Token(TokenType.NUMBER, "10", 10d, new Position(20, 11)),
-      new Token(TokenType.EQUAL_EQUAL, "==", null, new Position(20, 14)),
-      new Token(TokenType.NUMBER, "2.0", 2.0d, new Position(20, 17)),
-      new Token(TokenType.OR, "or", null, new Position(20, 21)),
-      new Token(TokenType.LEFT_PAREN, "(", null, new Position(21, 8)),
-      new Token(TokenType.NUMBER, "3", 3d, new Position(21, 9)),
-      new Token(TokenType.GREATER_EQUAL, ">=", null, new Position(21, 11)),
-      new Token(TokenType.NUMBER, "3", 3d, new Position(21, 14)),
-      new Token(TokenType.AND, "and", null, new Position(21, 16)),
-      new Token(TokenType.STRING, "'abc'", "abc", new Position(21, 20)),
-      new Token(TokenType.EQUAL_EQUAL, "==", null, new Position(21, 26)),
-      new Token(TokenType.STRING, "'abc'", "abc", new Position(21, 29)),
-      new Token(TokenType.RIGHT_PAREN, ")", null, new Position(21, 34)),
-      new Token(TokenType.TERNARY, "?", null, new Position(22, 8)),
-      new Token(TokenType.NUMBER, "0", 0d, new Position(22, 10)),
-      new Token(TokenType.COLON, ":", null, new Position(23, 8)),
-      new Token(TokenType.NUMBER, "1", 1d, new Position(23, 10)),
-      new Token(TokenType.SEMICOLON, ";", null, new Position(23, 11)),
-      new Token(TokenType.RIGHT_BRACE, "}", null, new Position(24, 2)),
-      new Token(TokenType.RIGHT_BRACE, "}", null, new Position(25, 0)),
-      new Token(TokenType.EOF, "\n", null, new Position(27, 0)),
+      new Token(TokenType.CLASS, "class", null, lines.at(5, 0)),
+      new Token(TokenType.IDENTIFIER, "LoxCode", null, lines.at(5, 6)),
+      new Token(TokenType.LEFT_BRACE, "{", null, lines.at(5, 14)),
+      new Token(TokenType.FN, "fn", null, lines.at(6, 2)),
+      new Token(TokenType.IDENTIFIER, "helloName", null, lines.at(6, 5)),
+      new Token(TokenType.LEFT_PAREN, "(", null, lines.at(6, 14)),
+      new Token(TokenType.IDENTIFIER, "name", null, lines.at(6, 15)),
+      new Token(TokenType.RIGHT_PAREN, ")", null, lines.at(6, 19)),
+      new Token(TokenType.LEFT_BRACE, "{", null, lines.at(6, 21)),
+      new Token(TokenType.LET, "let", null, lines.at(7, 4)),
+      new Token(TokenType.IDENTIFIER, "helloStr", null, lines.at(7, 8)),
+      new Token(TokenType.EQUAL, "=", null, lines.at(7, 17)),
+      new Token(TokenType.STRING, "'Hello'", "Hello", lines.at(7, 19)),
+      new Token(TokenType.PLUS, "+", null, lines.at(7, 27)),
+      new Token(TokenType.IDENTIFIER, "name", null, lines.at(7, 29)),
+      new Token(TokenType.SEMICOLON, ";", null, lines.at(7, 33)),
+      new Token(TokenType.RETURN, "return", null, lines.at(9, 4)),
+      new Token(TokenType.IDENTIFIER, "helloStr", null, lines.at(9, 11)),
+      new Token(TokenType.SEMICOLON, ";", null, lines.at(9, 19)),
+      new Token(TokenType.RIGHT_BRACE, "}", null, lines.at(10, 2)),
+      new Token(TokenType.FN, "fn", null, lines.at(12, 2)),
+      new Token(TokenType.IDENTIFIER, "main", null, lines.at(12, 5)),
+      new Token(TokenType.LEFT_PAREN, "(", null, lines.at(12, 9)),
+      new Token(TokenType.RIGHT_PAREN, ")", null, lines.at(12, 10)),
+      new Token(TokenType.LEFT_BRACE, "{", null, lines.at(12, 12)),
+      new Token(TokenType.WHILE, "while", null, lines.at(14, 4)),
+      new Token(TokenType.LEFT_PAREN, "(", null, lines.at(14, 10)),
+      new Token(TokenType.TRUE, "true", null, lines.at(14, 11)),
+      new Token(TokenType.RIGHT_PAREN, ")", null, lines.at(14, 15)),
+      new Token(TokenType.IDENTIFIER, "print", null, lines.at(15, 6)),
+      new Token(TokenType.IDENTIFIER, "helloWorld", null, lines.at(15, 12)),
+      new Token(TokenType.LEFT_PAREN, "(", null, lines.at(15, 22)),
+      new Token(TokenType.STRING, "'Dylan'", "Dylan", lines.at(15, 23)),
+      new Token(TokenType.RIGHT_PAREN, ")", null, lines.at(15, 30)),
+      new Token(TokenType.SEMICOLON, ";", null, lines.at(15, 31)),
+      new Token(TokenType.IF, "if", null, lines.at(17, 4)),
+      new Token(TokenType.LEFT_PAREN, "(", null, lines.at(17, 7)),
+      new Token(TokenType.FALSE, "false", null, lines.at(17, 8)),
+      new Token(TokenType.RIGHT_PAREN, ")", null, lines.at(17, 13)),
+      new Token(TokenType.IDENTIFIER, "print", null, lines.at(18, 6)),
+      new Token(TokenType.NIL, "nil", null, lines.at(18, 12)),
+      new Token(TokenType.SEMICOLON, ";", null, lines.at(18, 15)),
+      new Token(TokenType.RETURN, "return", null, lines.at(20, 4)),
+      new Token(TokenType.NUMBER, "10", 10d, lines.at(20, 11)),
+      new Token(TokenType.EQUAL_EQUAL, "==", null, lines.at(20, 14)),
+      new Token(TokenType.NUMBER, "2.0", 2.0d, lines.at(20, 17)),
+      new Token(TokenType.OR, "or", null, lines.at(20, 21)),
+      new Token(TokenType.LEFT_PAREN, "(", null, lines.at(21, 8)),
+      new Token(TokenType.NUMBER, "3", 3d, lines.at(21, 9)),
+      new Token(TokenType.GREATER_EQUAL, ">=", null, lines.at(21, 11)),
+      new Token(TokenType.NUMBER, "3", 3d, lines.at(21, 14)),
+      new Token(TokenType.AND, "and", null, lines.at(21, 16)),
+      new Token(TokenType.STRING, "'abc'", "abc", lines.at(21, 20)),
+      new Token(TokenType.EQUAL_EQUAL, "==", null, lines.at(21, 26)),
+      new Token(TokenType.STRING, "'abc'", "abc", lines.at(21, 29)),
+      new Token(TokenType.RIGHT_PAREN, ")", null, lines.at(21, 34)),
+      new Token(TokenType.TERNARY, "?", null, lines.at(22, 8)),
+      new Token(TokenType.NUMBER, "0", 0d, lines.at(22, 10)),
+      new Token(TokenType.COLON, ":", null, lines.at(23, 8)),
+      new Token(TokenType.NUMBER, "1", 1d, lines.at(23, 10)),
+      new Token(TokenType.SEMICOLON, ";", null, lines.at(23, 11)),
+      new Token(TokenType.RIGHT_BRACE, "}", null, lines.at(24, 2)),
+      new Token(TokenType.RIGHT_BRACE, "}", null, lines.at(25, 0)),
+      new Token(TokenType.EOF, "\n", null, lines.at(26, 0)),
     };
 
     assertArrayEquals(expectedTokens, lexerTokens.toArray());
 
     final var commentToken = "//comment";
+    lexer = new Lexer(commentToken);
     assertEquals(
-        new Token(TokenType.EOF, "//comment", null, new Position(1, 0)),
-        new Lexer(commentToken).scanTokens().get(0));
+        new Token(TokenType.EOF, "//comment", null, lexer.lineMap().at(1, 0)),
+        lexer.scanTokens().get(0));
 
     final var blockToken = "/*comment*/";
+    lexer = new Lexer(blockToken);
     assertEquals(
-        new Token(TokenType.EOF, "/*comment*/", null, new Position(1, 0)),
-        new Lexer(blockToken).scanTokens().get(0));
+        new Token(TokenType.EOF, "/*comment*/", null, lexer.lineMap().at(1, 0)),
+        lexer.scanTokens().get(0));
 
     final var emptyLine = "";
+    lexer = new Lexer(emptyLine);
     assertEquals(
-        new Token(TokenType.EOF, "", null, new Position(1, 0)),
-        new Lexer(emptyLine).scanTokens().get(0));
+        new Token(TokenType.EOF, "", null, lexer.lineMap().at(1, 0)), lexer.scanTokens().get(0));
 
     final var addition = "10 + 50\n";
+    lexer = new Lexer(addition);
+    lexerTokens = lexer.scanTokens();
+    lines = lexer.lineMap();
     Token[] addToken = {
-      new Token(TokenType.NUMBER, "10", 10d, new Position(1, 0)),
-      new Token(TokenType.PLUS, "+", null, new Position(1, 3)),
-      new Token(TokenType.NUMBER, "50", 50d, new Position(1, 5)),
-      new Token(TokenType.EOF, "\n", null, new Position(2, 0))
+      new Token(TokenType.NUMBER, "10", 10d, lines.at(1, 0)),
+      new Token(TokenType.PLUS, "+", null, lines.at(1, 3)),
+      new Token(TokenType.NUMBER, "50", 50d, lines.at(1, 5)),
+      new Token(TokenType.EOF, "\n", null, lines.at(1, 7))
     };
-    assertArrayEquals(addToken, new Lexer(addition).scanTokens().toArray());
+    assertArrayEquals(addToken, lexerTokens.toArray());
+  }
+
+  @Test
+  void testStreamedTokenization() {
+    final var line = "let mut value = 'string literal' + 12.5; // trailing comment\n";
+    final var longString = "'" + "x".repeat(20_000) + "'\n";
+    final var source = line.repeat(500) + longString + line.repeat(500);
+
+    var expectedTokens = new Lexer(source).scanTokens();
+    var streamedTokens = new Lexer(new StringReader(source)).scanTokens();
+
+    assertEquals(expectedTokens.size(), streamedTokens.size());
+
+    for (int i = 0; i < streamedTokens.size(); i++) {
+      assertSameToken(expectedTokens.get(i), streamedTokens.get(i));
+    }
+  }
+
+  @Test
+  void testPackedTokenization() {
+    final var source = "let mut value = 'string' + 12.5;\nfn f(a) { return a >= 2; } // end\n";
+
+    var expectedTokens = new Lexer(source).scanTokens();
+    var packedTokens = new Lexer(source).scanPacked();
+
+    assertEquals(expectedTokens.size(), packedTokens.size());
+
+    for (int i = 0; i < packedTokens.size(); i++) {
+      assertEquals(expectedTokens.get(i).type(), packedTokens.type(i));
+      assertSameToken(expectedTokens.get(i), packedTokens.token(i));
+    }
+  }
+
+  @Test
+  void testKeywordClassification() {
+    final var keywords =
+        "and class else false fn for if nil or return super self true let while continue break"
+            + " mut static";
+    final var identifiers = "an classy els fals f form i nill orr returns supe selfish tru lets";
+
+    var keywordTokens = new Lexer(keywords).scanTokens();
+    for (var token : keywordTokens.subList(0, keywordTokens.size() - 1)) {
+      assertTrue(token.type() != TokenType.IDENTIFIER);
+      assertEquals(token.type().lexeme(), token.lexeme());
+    }
+
+    var identifierTokens = new Lexer(identifiers).scanTokens();
+    for (var token : identifierTokens.subList(0, identifierTokens.size() - 1)) {
+      assertEquals(TokenType.IDENTIFIER, token.type());
+    }
+  }
+
+  @Test
+  void testLazyPositions() {
+    var first = new Lexer("a\n  b\n\n'multi\nline' c /* block\ncomment */ d").scanTokens();
+    var second = new Lexer("\n\ne").scanTokens();
+
+    assertEquals(new Position(1, 0), LineMap.resolve(first.get(0).position()));
+    assertEquals(new Position(2, 2), LineMap.resolve(first.get(1).position()));
+    assertEquals(new Position(4, 0), LineMap.resolve(first.get(2).position()));
+    assertEquals(new Position(5, 6), LineMap.resolve(first.get(3).position()));
+    assertEquals(new Position(6, 11), LineMap.resolve(first.get(4).position()));
+    assertEquals(new Position(3, 0), LineMap.resolve(second.get(0).position()));
+  }
+
+  @Test
+  void testNumberLiterals() {
+    final var numbers =
+        "0 1 100 007 0.1 123.456 0.30000000000000004 9007199254740993 123456789012345.6 1.5 100";
+
+    var tokens = new Lexer(numbers).scanTokens();
+    var lexemes = numbers.split(" ");
+
+    for (int i = 0; i < lexemes.length; i++) {
+      assertEquals(Double.parseDouble(lexemes[i]), tokens.get(i).literal());
+    }
+
+    assertSame(tokens.get(2).literal(), tokens.get(lexemes.length - 1).literal());
+  }
+
+  @Test
+  void testInternedNames() {
+    final var source = "let name = 'h\u00ef'; name = name + 'h\u00ef'; let other = \"h\u00ef\";";
+
+    var tokens = new Lexer(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8))).scanPacked();
+
+    assertEquals("h\u00ef", tokens.literal(3));
+    assertSame(tokens.token(1).lexeme(), tokens.token(5).lexeme());
+    assertSame(tokens.token(5).lexeme(), tokens.token(7).lexeme());
+    assertSame(tokens.literal(3), tokens.literal(9));
+    assertSame(tokens.literal(3), tokens.literal(14));
+  }
+
+  @Test
+  void testByteSources() {
+    final var line = "let s = 'h\u00e9llo \u20ac\ud83d\ude00';\nlet t = s + \"\u00e9\";\n";
+    final var source = line.repeat(500);
+    final var utf8 = source.getBytes(StandardCharsets.UTF_8);
+
+    var expected = new Lexer(source).scanTokens();
+    var packed = new Lexer(utf8).scanPacked();
+    var streamed = new Lexer(Channels.newChannel(new ByteArrayInputStream(utf8))).scanTokens();
+
+    assertEquals(expected.size(), packed.size());
+    assertEquals(expected.size(), streamed.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).literal(), packed.literal(i));
+      assertEquals(expected.get(i).lexeme(), streamed.get(i).lexeme());
+      assertSameToken(packed.token(i), streamed.get(i));
+    }
+
+    var errorHandler = LoxErrorHandler.getInstance(Lexer.class);
+    var tokens = new Lexer("a \u00e9\u20ac b".getBytes(StandardCharsets.UTF_8)).scanTokens();
+
+    assertEquals(3, tokens.size());
+    assertEquals("b", tokens.get(1).lexeme());
+    assertTrue(errorHandler.hasError());
+    errorHandler.reset();
+  }
+
+  @Test
+  void testMappedSources() throws IOException {
+    final var source = "let s = 'h\u00e9llo';\nfn f(x) { return x + 1; } // done\n".repeat(50);
+    final var utf8 = source.getBytes(StandardCharsets.UTF_8);
+    final var expected = new Lexer(source).scanTokens();
+
+    var file = Files.createTempFile("jlox", ".lox");
+    Files.write(file, utf8);
+
+    try (var channel = FileChannel.open(file)) {
+      var mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      assertSameTokens(expected, new Lexer(mapped).scanPacked());
+    } finally {
+      Files.delete(file);
+    }
+
+    // a buffer that is partly read, and one with no backing array, start from their position
+    var prefixed = ByteBuffer.allocate(utf8.length + 7).put("let a;\n".getBytes()).put(utf8);
+    var consumed = prefixed.flip().position(7);
+    var direct = ByteBuffer.allocateDirect(utf8.length + 3).put(new byte[3]).put(utf8).flip();
+
+    assertSameTokens(expected, new Lexer(consumed).scanPacked());
+    assertSameTokens(expected, new Lexer(direct.position(3)).scanPacked());
+    assertEquals(7, consumed.position());
+  }
+
+  private static void assertSameTokens(List<Token> expected, TokenBuffer actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).type(), actual.token(i).type());
+      assertEquals(expected.get(i).lexeme(), actual.token(i).lexeme());
+      assertEquals(expected.get(i).literal(), actual.token(i).literal());
+    }
+  }
+
+  @Test
+  void testBulkSkipping() {
+    final var body =
+        "let a\t = \r 1;            // comment with * and / \"\n\t\t/* block ** \n"
+            + "  * still **/ going *\n*/ a\n    /**/ b // end";
+
+    for (int indent = 0; indent < 16; indent++) {
+      var source = " ".repeat(indent) + body;
+      var expected = new Lexer(source).scanTokens();
+      var actual = new Lexer(source.getBytes(StandardCharsets.UTF_8)).scanPacked();
+
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertSameToken(expected.get(i), actual.token(i));
+      }
+    }
+  }
+
+  @Test
+  void testParallelTokenization() {
+    final var source =
+        "let a = 1;\n'two\n// not a comment\n' b\n/* split\nhere? */ c / 2.5;\n"
+            + "// \"quoted\n\"line\" /* **/ still\ncomment */\nfn f() { return self; }\n";
+
+    var expected = new Lexer(source).scanPacked();
+    var src = new StringSource(source);
+
+    for (int chunkSize = 1; chunkSize <= source.length(); chunkSize++) {
+      var actual = ParallelLexer.scan(src, () -> src, chunkSize);
+
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertSameToken(expected.token(i), actual.token(i));
+      }
+    }
+
+    assertArrayEquals(
+        new int[] {0, 11, 37, 64, 75, 106, source.length()}, ParallelLexer.splitPoints(src, 11));
+  }
+
+  private static void assertSameToken(Token expected, Token actual) {
+    assertEquals(expected.type(), actual.type());
+    assertEquals(expected.lexeme(), actual.lexeme());
+    assertEquals(expected.literal(), actual.literal());
+    assertEquals(LineMap.resolve(expected.position()), LineMap.resolve(actual.position()));
   }
 }
@@ -0,0 +1,69 @@
+package com.dylmay.jlox.optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.parser.Parser;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CallInlinerTest {
+  private static List<Stmt> parse(String source) {
+    return new Parser(new Lexer(source)).parse();
+  }
+
+  private static Expr last(List<Stmt> stmts) {
+    return ((Stmt.Expression) stmts.get(stmts.size() - 1)).expr;
+  }
+
+  @Test
+  void testInlinesSmallFunctions() {
+    var stmts =
+        new CallInliner().inline(parse("fn square(n) { return n * n; } let x = 3; square(x);"));
+    var product = (Expr.Binary) last(stmts);
+
+    assertEquals("x", ((Expr.Variable) product.left).name.lexeme());
+    var square = (Expr.Fn) ((Stmt.Var) stmts.get(0)).initializer;
+    var returned = (Expr.Binary) ((Stmt.Return) square.body.get(0)).value;
+    assertEquals(
+        ((Expr.Variable) returned.right).name.position(),
+        ((Expr.Variable) product.right).name.position());
+
+    var less =
+        new CallInliner().inline(parse("let less = fn(a, b) { return a < b; }; less(1, 2);"));
+    assertTrue(last(less) instanceof Expr.Binary);
+  }
+
+  @Test
+  void testInlinesWithinFunctions() {
+    var stmts =
+        new CallInliner()
+            .inline(parse("fn f(k) { let twice = fn(n) { return n + n; }; return twice(k); }"));
+    var body = ((Expr.Fn) ((Stmt.Var) stmts.get(0)).initializer).body;
+
+    assertTrue(((Stmt.Return) body.get(1)).value instanceof Expr.Binary);
+  }
+
+  @Test
+  void testKeepsCallsItCantProve() {
+    var sources =
+        List.of(
+            "fn mut square(n) { return n * n; } square(2);",
+            "fn square(n) { return n * n; } fn f() { square = nil; } square(2);",
+            "fn square(n) { print(n); return n * n; } square(2);",
+            "fn square(n) { return n * n; } square(g());",
+            "fn square(n) { return n * n; } square(undeclared);",
+            "fn square(n) { return n * n; } square(1, 2);",
+            "fn scale(n) { return n * k; } let k = 2; scale(2);",
+            "square(2); fn square(n) { return n * n; }");
+
+    for (var source : sources) {
+      var stmts = parse(source);
+      assertSame(stmts, new CallInliner().inline(stmts));
+    }
+  }
+}
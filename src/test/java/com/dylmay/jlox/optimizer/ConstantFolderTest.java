@@ -0,0 +1,51 @@
+package com.dylmay.jlox.optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+public class ConstantFolderTest {
+  private static Expr fold(String source) {
+    var stmts = new ConstantFolder().fold(new Parser(new Lexer(source)).parse());
+
+    return ((Stmt.Expression) stmts.get(0)).expr;
+  }
+
+  @Test
+  void testFoldsConstants() {
+    assertEquals(86400d, ((Expr.Literal) fold("60 * 60 * 24;")).value);
+    assertEquals("prefixsuffix", ((Expr.Literal) fold("'prefix' + 'suffix';")).value);
+    assertEquals(false, ((Expr.Literal) fold("!true;")).value);
+    assertEquals(-2d, ((Expr.Literal) fold("-(1 + 1);")).value);
+    assertEquals("a", ((Expr.Literal) fold("1 < 2 ? 'a' : 'b';")).value);
+    assertEquals("d", ((Expr.Literal) fold("nil or 'd';")).value);
+  }
+
+  @Test
+  void testSimplifiesIdentities() {
+    assertTrue(fold("(a - b) * 1;") instanceof Expr.Grouping);
+    assertTrue(fold("1 * -a;") instanceof Expr.Unary);
+    assertTrue(fold("(a * b) - 0;") instanceof Expr.Grouping);
+  }
+
+  @Test
+  void testKeepsRuntimeErrors() {
+    assertTrue(fold("'a' == 'a';") instanceof Expr.Binary);
+    assertTrue(fold("1 + 'a';") instanceof Expr.Binary);
+    assertTrue(fold("a * 1;") instanceof Expr.Binary);
+    assertTrue(fold("(a - b) + 0;") instanceof Expr.Binary);
+  }
+
+  @Test
+  void testLeavesUnchangedTreesAlone() {
+    var stmts = new Parser(new Lexer("let mut x = a + b; x += c;")).parse();
+
+    assertSame(stmts, new ConstantFolder().fold(stmts));
+  }
+}
@@ -0,0 +1,82 @@
+package com.dylmay.jlox.optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.parser.Parser;
+import com.dylmay.jlox.resolver.Resolver;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class DeadCodeEliminatorTest {
+  private static List<Stmt> resolved(String source) {
+    var stmts = new Parser(new Lexer(source)).parse();
+    new Resolver().resolve(stmts);
+    return stmts;
+  }
+
+  private static List<Stmt> prune(String source) {
+    return new DeadCodeEliminator().prune(resolved(source));
+  }
+
+  private static List<Stmt> body(String source) {
+    return ((Expr.Fn) ((Stmt.Var) prune(source).get(0)).initializer).body;
+  }
+
+  @Test
+  void testDropsUnreachableStatements() {
+    var stmts = body("fn f() { let mut a = 1; a += 1; return a; a = 2; print(a); }");
+    assertEquals(3, stmts.size());
+    assertTrue(stmts.get(2) instanceof Stmt.Return);
+
+    var loop = (Stmt.While) prune("while true { if a { break; } else { continue; } a(); }").get(0);
+    assertEquals(1, ((Stmt.Block) loop.body).stmts.size());
+  }
+
+  @Test
+  void testTakesConstantBranches() {
+    var stmts = prune("if false { a(); } else { b(); } if nil { c(); } while false { d(); }");
+    assertEquals(1, stmts.size());
+    assertTrue(stmts.get(0) instanceof Stmt.Block);
+
+    var chain = (Stmt.If) prune("if a { b(); } else if false { c(); }").get(0);
+    assertEquals(null, chain.elseBranch);
+  }
+
+  @Test
+  void testDropsUnusedLocals() {
+    var stmts = body("fn f(x) { let a = 1; let b = x; let c = g(); let d = fn() {}; return b; }");
+    assertEquals(3, stmts.size());
+    assertEquals("b", ((Stmt.Var) stmts.get(0)).name.lexeme());
+    assertEquals("c", ((Stmt.Var) stmts.get(1)).name.lexeme());
+
+    // top-level names stay, as later code can still read them
+    assertEquals(1, prune("let unused = 1;").size());
+  }
+
+  @Test
+  void testReportsRemovals() {
+    var removed = new ArrayList<String>();
+    new DeadCodeEliminator((position, description) -> removed.add(description))
+        .prune(resolved("fn f() { let a = 1; return; f(); } if true { f(); }"));
+
+    assertEquals(
+        List.of(
+            "1 unreachable statement after 'return'",
+            "unused binding 'a'",
+            "branch on constant condition"),
+        removed);
+  }
+
+  @Test
+  void testLeavesLiveTreesAlone() {
+    var stmts = resolved("fn f(x) { let mut y = x; y += 1; return y; } print(f(1));");
+
+    assertSame(stmts, new DeadCodeEliminator().prune(stmts));
+  }
+}
@@ -0,0 +1,88 @@
+package com.dylmay.jlox.optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.error.LoxErrorHandler;
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.parser.Parser;
+import com.dylmay.jlox.resolver.Resolver;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class LoopInvariantHoisterTest {
+  private static List<Stmt> body(String source) {
+    var stmts = new LoopInvariantHoister().hoist(new Parser(new Lexer(source)).parse());
+    var errors = LoxErrorHandler.getInstance(Resolver.class);
+
+    errors.reset();
+    new Resolver().resolve(stmts);
+    assertFalse(errors.hasError());
+
+    return ((Expr.Fn) ((Stmt.Var) stmts.get(0)).initializer).body;
+  }
+
+  private static String name(Stmt stmt) {
+    return ((Stmt.Var) stmt).name.lexeme();
+  }
+
+  @Test
+  void testHoistsInvariants() {
+    var stmts =
+        body(
+            """
+            fn f(n) {
+              let k = 2;
+              let mut t = 0;
+              let mut i = 0;
+              while i < n { t += i * (k * 3 + 1) - (k * 3 + 1); i += 1; }
+              return t;
+            }
+            """);
+
+    assertEquals(6, stmts.size());
+    assertEquals("$0", name(stmts.get(3)));
+    assertTrue(((Stmt.Var) stmts.get(3)).initializer instanceof Expr.Grouping);
+    assertTrue(stmts.get(4) instanceof Stmt.While);
+  }
+
+  @Test
+  void testHoistsThroughNestedLoops() {
+    var stmts =
+        body(
+            """
+            fn f() {
+              let a = 1; let b = 2; let mut s = 0;
+              for let mut i = 0; i < 3; i += 1 { for let mut j = 0; j < 3; j += 1 { s += a * b; } }
+              return s;
+            }
+            """);
+
+    assertEquals("$1", name(stmts.get(3)));
+
+    var outer = (Stmt.For) stmts.get(4);
+    assertTrue(outer.bodyScoped);
+    assertEquals("$0", name(outer.body.get(0)));
+    assertTrue(((Stmt.Var) outer.body.get(0)).initializer instanceof Expr.Variable);
+  }
+
+  @Test
+  void testKeepsWhatMightChangeOrFail() {
+    var source =
+        """
+        fn f(n) {
+          let mut a = 1; let mut b = 2; let c = 'c';
+          let bump = fn() { b += 1; };
+          while a < 10 { a += n * 2 + b * 2 + (a + 1) + (c + c); bump(); }
+          return a;
+        }
+        """;
+    var stmts = new Parser(new Lexer(source)).parse();
+
+    assertSame(stmts, new LoopInvariantHoister().hoist(stmts));
+  }
+}
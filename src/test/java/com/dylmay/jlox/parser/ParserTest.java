@@ -1,15 +1,23 @@
 package com.dylmay.jlox.parser;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.LazyBody;
+import com.dylmay.jlox.assets.LineMap;
 import com.dylmay.jlox.assets.Position;
 import com.dylmay.jlox.assets.Stmt;
 import com.dylmay.jlox.assets.Token;
 import com.dylmay.jlox.assets.TokenType;
 import com.dylmay.jlox.error.LoxErrorHandler;
 import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.resolver.Resolver;
+import com.dylmay.jlox.util.RuntimeError;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 
@@ -17,7 +25,7 @@ public class ParserTest {
   @Test
   @SuppressWarnings("nullness")
   void testNoTokens() {
-    final var tokenList = List.of(new Token(TokenType.EOF, "", null, new Position(1, 0)));
+    final var tokenList = List.of(new Token(TokenType.EOF, "", null, 0));
 
     var errHndler = LoxErrorHandler.getInstance(Parser.class);
     var expr = new Parser(tokenList).parse();
@@ -39,20 +47,27 @@ public class ParserTest {
 
     tokenList =
         List.of(
-            new Token(TokenType.PRINT, "print", null, Position.NO_POSITION),
+            new Token(TokenType.IDENTIFIER, "print", null, Position.NO_POSITION),
+            new Token(TokenType.LEFT_PAREN, "(", null, Position.NO_POSITION),
             new Token(TokenType.NUMBER, "10", 10d, Position.NO_POSITION),
             new Token(TokenType.PLUS, "+", null, Position.NO_POSITION),
             new Token(TokenType.NUMBER, "50", 50d, Position.NO_POSITION),
+            new Token(TokenType.RIGHT_PAREN, ")", null, Position.NO_POSITION),
             new Token(TokenType.SEMICOLON, ";", null, Position.NO_POSITION),
             new Token(TokenType.EOF, "", null, Position.NO_POSITION));
 
     actual = new Parser(tokenList).parse();
     var expected =
-        new Stmt.Print(
-            new Expr.Binary(
-                new Expr.Literal(10d, Position.NO_POSITION),
-                new Token(TokenType.PLUS, "+", null, Position.NO_POSITION),
-                new Expr.Literal(50d, Position.NO_POSITION)));
+        new Stmt.Expression(
+            new Expr.Call(
+                new Expr.Variable(
+                    new Token(TokenType.IDENTIFIER, "print", null, Position.NO_POSITION)),
+                new Token(TokenType.RIGHT_PAREN, ")", null, Position.NO_POSITION),
+                List.of(
+                    new Expr.Binary(
+                        new Expr.Literal(10d, Position.NO_POSITION),
+                        new Token(TokenType.PLUS, "+", null, Position.NO_POSITION),
+                        new Expr.Literal(50d, Position.NO_POSITION)))));
 
     assertEquals(expected, actual.get(0));
   }
@@ -60,28 +75,29 @@ public class ParserTest {
   @Test
   @SuppressWarnings("nullness")
   public void testCComma() {
-    var lexer = new Lexer("1 + 2, 3 + 4, 5 + 6;");
+    var lexer = new Lexer("f(1 + 2, 3 + 4, 5 + 6);");
+    var lines = lexer.lineMap();
 
     var actual = new Parser(lexer.scanTokens()).parse();
 
     var expected =
         new Stmt.Expression(
-            new Expr.Binary(
-                new Expr.Binary(
+            new Expr.Call(
+                new Expr.Variable(new Token(TokenType.IDENTIFIER, "f", null, lines.at(1, 0))),
+                new Token(TokenType.RIGHT_PAREN, ")", null, lines.at(1, 21)),
+                List.of(
                     new Expr.Binary(
-                        new Expr.Literal(1d, new Position(1, 0)),
-                        new Token(TokenType.PLUS, "+", null, new Position(1, 2)),
-                        new Expr.Literal(2d, new Position(1, 4))),
-                    new Token(TokenType.COMMA, ",", null, new Position(1, 5)),
+                        new Expr.Literal(1d, lines.at(1, 2)),
+                        new Token(TokenType.PLUS, "+", null, lines.at(1, 4)),
+                        new Expr.Literal(2d, lines.at(1, 6))),
                     new Expr.Binary(
-                        new Expr.Literal(3d, new Position(1, 7)),
-                        new Token(TokenType.PLUS, "+", null, new Position(1, 9)),
-                        new Expr.Literal(4d, new Position(1, 11)))),
-                new Token(TokenType.COMMA, ",", null, new Position(1, 12)),
-                new Expr.Binary(
-                    new Expr.Literal(5d, new Position(1, 14)),
-                    new Token(TokenType.PLUS, "+", null, new Position(1, 16)),
-                    new Expr.Literal(6d, new Position(1, 18)))));
+                        new Expr.Literal(3d, lines.at(1, 9)),
+                        new Token(TokenType.PLUS, "+", null, lines.at(1, 11)),
+                        new Expr.Literal(4d, lines.at(1, 13))),
+                    new Expr.Binary(
+                        new Expr.Literal(5d, lines.at(1, 16)),
+                        new Token(TokenType.PLUS, "+", null, lines.at(1, 18)),
+                        new Expr.Literal(6d, lines.at(1, 20))))));
 
     assertEquals(expected, actual.get(0));
   }
@@ -90,6 +106,7 @@ public class ParserTest {
   @SuppressWarnings("nullness")
   public void testCTernary() {
     var lexer = new Lexer("1 == 2 ? 1 : 0;");
+    var lines = lexer.lineMap();
 
     var actual = new Parser(lexer.scanTokens()).parse();
 
@@ -97,12 +114,181 @@ public class ParserTest {
         new Stmt.Expression(
             new Expr.Ternary(
                 new Expr.Binary(
-                    new Expr.Literal(1d, new Position(1, 0)),
-                    new Token(TokenType.EQUAL_EQUAL, "==", null, new Position(1, 2)),
-                    new Expr.Literal(2d, new Position(1, 5))),
-                new Expr.Literal(1d, new Position(1, 9)),
-                new Expr.Literal(0d, new Position(1, 13))));
+                    new Expr.Literal(1d, lines.at(1, 0)),
+                    new Token(TokenType.EQUAL_EQUAL, "==", null, lines.at(1, 2)),
+                    new Expr.Literal(2d, lines.at(1, 5))),
+                new Expr.Literal(1d, lines.at(1, 9)),
+                new Expr.Literal(0d, lines.at(1, 13))));
+
+    assertEquals(expected, actual.get(0));
+  }
+
+  @Test
+  @SuppressWarnings("nullness")
+  void testOperatorBinding() {
+    var lexer = new Lexer("a = b or c and d and e + f * -g;");
+    var lines = lexer.lineMap();
+
+    var actual = new Parser(lexer.scanTokens()).parse();
+
+    var expected =
+        new Stmt.Expression(
+            new Expr.Assign(
+                new Token(TokenType.IDENTIFIER, "a", null, lines.at(1, 0)),
+                new Expr.Logical(
+                    new Expr.Variable(new Token(TokenType.IDENTIFIER, "b", null, lines.at(1, 4))),
+                    new Token(TokenType.OR, "or", null, lines.at(1, 6)),
+                    new Expr.Logical(
+                        new Expr.Variable(
+                            new Token(TokenType.IDENTIFIER, "c", null, lines.at(1, 9))),
+                        new Token(TokenType.AND, "and", null, lines.at(1, 11)),
+                        new Expr.Logical(
+                            new Expr.Variable(
+                                new Token(TokenType.IDENTIFIER, "d", null, lines.at(1, 15))),
+                            new Token(TokenType.AND, "and", null, lines.at(1, 17)),
+                            new Expr.Binary(
+                                new Expr.Variable(
+                                    new Token(TokenType.IDENTIFIER, "e", null, lines.at(1, 21))),
+                                new Token(TokenType.PLUS, "+", null, lines.at(1, 23)),
+                                new Expr.Binary(
+                                    new Expr.Variable(
+                                        new Token(
+                                            TokenType.IDENTIFIER, "f", null, lines.at(1, 25))),
+                                    new Token(TokenType.STAR, "*", null, lines.at(1, 27)),
+                                    new Expr.Unary(
+                                        new Token(TokenType.MINUS, "-", null, lines.at(1, 29)),
+                                        new Expr.Variable(
+                                            new Token(
+                                                TokenType.IDENTIFIER,
+                                                "g",
+                                                null,
+                                                lines.at(1, 30)))))))))));
 
     assertEquals(expected, actual.get(0));
   }
+
+  @Test
+  @SuppressWarnings("nullness")
+  void testCompoundAssignment() {
+    var lexer = new Lexer("a.b += 1;");
+    var lines = lexer.lineMap();
+
+    var actual = new Parser(lexer.scanTokens()).parse();
+
+    var expected =
+        new Stmt.Expression(
+            new Expr.CompoundSet(
+                new Expr.Variable(new Token(TokenType.IDENTIFIER, "a", null, lines.at(1, 0))),
+                new Token(TokenType.IDENTIFIER, "b", null, lines.at(1, 2)),
+                new Token(TokenType.PLUS, "+", null, lines.at(1, 4)),
+                new Expr.Literal(1d, lines.at(1, 7))));
+
+    assertEquals(expected, actual.get(0));
+  }
+
+  @Test
+  @SuppressWarnings("nullness")
+  void testForLoops() {
+    var counting = new Parser(new Lexer("for let mut i = 0; i < 2; i += 1 { print(i); }")).parse();
+    var loop = (Stmt.For) counting.get(0);
+
+    assertTrue(loop.initializer instanceof Stmt.Var);
+    assertTrue(loop.increment instanceof Expr.CompoundAssign);
+    assertEquals(1, loop.body.size());
+    assertFalse(loop.bodyScoped);
+
+    var declaring = new Parser(new Lexer("for ; n < 1; n += 1 { let x = 1; break; }")).parse();
+    loop = (Stmt.For) declaring.get(0);
+
+    assertEquals(null, loop.initializer);
+    assertEquals(2, loop.body.size());
+    assertTrue(loop.bodyScoped);
+  }
+
+  @Test
+  @SuppressWarnings("nullness")
+  void testParallelParsing() {
+    final var source =
+        "fn a(x) { return x; }\nlet b = a((1));\nclass C : A { fn get() { return 1; } }\n"
+            + "fn d() {}\n";
+    var tokens = new Lexer(source).scanPacked();
+
+    assertArrayEquals(new int[] {0, 10, 20, 35, 41}, ParallelParser.splitPoints(tokens, 1));
+    assertEquals(new Parser(tokens).parse(), ParallelParser.parse(tokens, 1));
+
+    var errHndler = LoxErrorHandler.getInstance(Parser.class);
+    var broken = new Lexer("fn a() {}\nlet = 1;\nfn b() {}\n").scanPacked();
+
+    assertEquals(2, ParallelParser.parse(broken, 1).size());
+    assertTrue(errHndler.hasError());
+    errHndler.reset();
+  }
+
+  @Test
+  @SuppressWarnings("nullness")
+  void testIncrementalEdits() {
+    final var source = "let a = 1;\n\nfn f(x) {\n  return x;\n}\nlet b = 'two';\n";
+
+    var doc = new Document(source);
+    var before = doc.statements();
+    assertEquals(3, before.size());
+
+    doc.edit(4, 1, "abc");
+    var renamed = doc.statements();
+    assertEquals("abc", ((Stmt.Var) renamed.get(0)).name.lexeme());
+    assertSame(before.get(1), renamed.get(1));
+    assertSame(before.get(2), renamed.get(2));
+
+    doc.edit(14, 0, "let c;\n\n");
+    var inserted = doc.statements();
+    assertEquals(4, inserted.size());
+    assertSame(renamed.get(0), inserted.get(0));
+    assertSame(renamed.get(2), inserted.get(3));
+    assertEquals(
+        new Position(8, 4), LineMap.resolve(((Stmt.Var) inserted.get(3)).name.position()));
+
+    var errHndler = LoxErrorHandler.getInstance(Lexer.class);
+    doc.edit(14, 0, "/*");
+    assertEquals(1, doc.statements().size());
+    assertTrue(doc.hasErrors());
+    errHndler.reset();
+
+    doc.edit(14, 2, "");
+    assertEquals(4, doc.statements().size());
+    assertFalse(doc.hasErrors());
+    assertEquals(
+        source.replace("let a", "let abc").replace("\n\nfn", "\n\nlet c;\n\nfn"), doc.text());
+  }
+
+  @Test
+  @SuppressWarnings("nullness")
+  void testLazyBodies() {
+    final var source = "fn a(x) { let y = x; return b(y); }\nfn b(x) { return x; }\n";
+    var tokens = new Lexer(source).scanPacked();
+
+    var lazy = new Parser(tokens, true).parse();
+    var lazyA = (Expr.Fn) ((Stmt.Var) lazy.get(0)).initializer;
+    assertFalse(((LazyBody) lazyA.body).isLoaded());
+
+    var eager = new Parser(tokens).parse();
+    new Resolver().resolve(lazy);
+    new Resolver().resolve(eager);
+    assertEquals(eager, lazy);
+
+    var call = (Expr.Call) ((Stmt.Return) lazyA.body.get(1)).value;
+    assertEquals(-1, ((Expr.Variable) call.callee).depth);
+    assertEquals(0, ((Expr.Variable) call.args.get(0)).depth);
+    assertEquals(1, ((Expr.Variable) call.args.get(0)).slot);
+    assertEquals(-1, ((Expr.Variable) call.callee).slot);
+    assertEquals(2, lazyA.slots);
+
+    var errHndler = LoxErrorHandler.getInstance(Parser.class);
+    var broken = new Parser(new Lexer("fn c() { return {1}; }\n").scanPacked(), true).parse();
+    assertFalse(errHndler.hasError());
+
+    var lazyC = (Expr.Fn) ((Stmt.Var) broken.get(0)).initializer;
+    assertThrows(RuntimeError.class, lazyC.body::size);
+    assertTrue(errHndler.hasError());
+    errHndler.reset();
+  }
 }
@@ -0,0 +1,166 @@
+package com.dylmay.jlox.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dylmay.jlox.assets.Expr;
+import com.dylmay.jlox.assets.Stmt;
+import com.dylmay.jlox.lexer.Lexer;
+import com.dylmay.jlox.optimizer.CallInliner;
+import com.dylmay.jlox.optimizer.ConstantFolder;
+import com.dylmay.jlox.optimizer.DeadCodeEliminator;
+import com.dylmay.jlox.optimizer.LoopInvariantHoister;
+import com.dylmay.jlox.parser.Parser;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ResolverTest {
+  private static final String SOURCE =
+      """
+      fn f(a) {
+        let unused = 1;
+        let mut x = a;
+        x += 1;
+        {
+          let y = x;
+          let dead = 2;
+          x = y;
+        }
+        for let mut i = 0; i < a; i += 1 {
+          let z = i;
+          let w = z;
+          x += z;
+        }
+        return x;
+        print(x);
+      }
+      class C { fn m() { let gone = 1; return self; } }
+      fn g() { class L { fn h() { return 1; } } return L; }
+      """;
+
+  private static List<Stmt> resolved(String source) {
+    var stmts = new Parser(new Lexer(source)).parse();
+    new Resolver().resolve(stmts);
+    return stmts;
+  }
+
+  /** Every pass in the order the command line runs them. */
+  private static List<Stmt> compiled(String source) {
+    var stmts = new Parser(new Lexer(source)).parse();
+    stmts = new CallInliner().inline(stmts);
+    stmts = new ConstantFolder().fold(stmts);
+    stmts = new LoopInvariantHoister().hoist(stmts);
+    new Resolver().resolve(stmts);
+    return new DeadCodeEliminator().prune(stmts);
+  }
+
+  private static Expr.Fn fn(Stmt stmt) {
+    return (Expr.Fn) ((Stmt.Var) stmt).initializer;
+  }
+
+  private static <T extends Stmt> T first(List<Stmt> stmts, Class<T> type) {
+    return stmts.stream().filter(type::isInstance).map(type::cast).findFirst().orElseThrow();
+  }
+
+  private static Stmt.Var var(List<Stmt> stmts, String name) {
+    return stmts.stream()
+        .filter(stmt -> stmt instanceof Stmt.Var decl && decl.name.lexeme().equals(name))
+        .map(Stmt.Var.class::cast)
+        .findFirst()
+        .orElseThrow();
+  }
+
+  private static Expr expr(List<Stmt> stmts, Class<? extends Expr> type) {
+    return stmts.stream()
+        .filter(stmt -> stmt instanceof Stmt.Expression line && type.isInstance(line.expr))
+        .map(stmt -> ((Stmt.Expression) stmt).expr)
+        .findFirst()
+        .orElseThrow();
+  }
+
+  private static void assertVariable(int depth, int slot, Expr expr) {
+    var variable = (Expr.Variable) expr;
+    assertEquals(depth, variable.depth);
+    assertEquals(slot, variable.slot);
+  }
+
+  /** Checks what the resolver set, which pruning must leave as it was on the nodes it rebuilds. */
+  private static void assertResolved(List<Stmt> stmts) {
+    assertEquals(-1, ((Stmt.Var) stmts.get(0)).slot);
+    assertEquals(-1, ((Stmt.Class) stmts.get(1)).slot);
+
+    // the parameter, the unused local and x, whether or not the unused one is still there
+    var f = fn(stmts.get(0));
+    assertEquals(3, f.slots);
+    assertEquals(2, var(f.body, "x").slot);
+    assertVariable(0, 0, var(f.body, "x").initializer);
+
+    var bump = (Expr.CompoundAssign) expr(f.body, Expr.CompoundAssign.class);
+    assertEquals(0, bump.depth);
+    assertEquals(2, bump.slot);
+
+    var block = first(f.body, Stmt.Block.class);
+    assertEquals(2, block.slots);
+    assertEquals(0, var(block.stmts, "y").slot);
+    assertVariable(1, 2, var(block.stmts, "y").initializer);
+
+    var assign = (Expr.Assign) expr(block.stmts, Expr.Assign.class);
+    assertEquals(1, assign.depth);
+    assertEquals(2, assign.slot);
+    assertVariable(0, 0, assign.value);
+
+    var loop = first(f.body, Stmt.For.class);
+    assertTrue(loop.bodyScoped);
+    assertEquals(1, loop.slots);
+    assertEquals(2, loop.bodySlots);
+    assertVariable(0, 0, ((Expr.Binary) loop.condition).left);
+    assertVariable(1, 0, ((Expr.Binary) loop.condition).right);
+    assertVariable(1, 0, var(loop.body, "z").initializer);
+
+    var total = (Expr.CompoundAssign) expr(loop.body, Expr.CompoundAssign.class);
+    assertEquals(2, total.depth);
+    assertEquals(2, total.slot);
+    assertVariable(0, 0, total.value);
+
+    assertVariable(0, 2, first(f.body, Stmt.Return.class).value);
+
+    // self sits in the frame a method is bound in, one out from the method's own
+    var method = fn(((Stmt.Class) stmts.get(1)).decls.get(0));
+    assertEquals(1, method.slots);
+    var self = (Expr.This) first(method.body, Stmt.Return.class).value;
+    assertEquals(1, self.depth);
+    assertEquals(0, self.slot);
+
+    var g = fn(stmts.get(2));
+    assertEquals(1, g.slots);
+    assertEquals(0, first(g.body, Stmt.Class.class).slot);
+    assertVariable(0, 0, first(g.body, Stmt.Return.class).value);
+  }
+
+  @Test
+  void testDepthsAndSlots() {
+    var stmts = resolved(SOURCE);
+
+    assertResolved(stmts);
+    assertEquals(7, fn(stmts.get(0)).body.size());
+  }
+
+  @Test
+  void testPruningKeepsDepthsAndSlots() {
+    var stmts = compiled(SOURCE);
+    var f = fn(stmts.get(0));
+
+    // everything checked was rebuilt with something dropped from it
+    assertEquals(5, f.body.size());
+    assertEquals(2, first(f.body, Stmt.Block.class).stmts.size());
+    assertEquals(2, first(f.body, Stmt.For.class).body.size());
+    assertEquals(1, fn(((Stmt.Class) stmts.get(1)).decls.get(0)).body.size());
+
+    assertResolved(stmts);
+
+    // a tree with nothing to drop is handed back as it was
+    var kept = resolved("fn k(a) { return a; }");
+    assertSame(kept.get(0), new DeadCodeEliminator().prune(kept).get(0));
+  }
+}
@@ -1,4 +1,5 @@
 #!/usr/bin/python
+import re
 from pathlib import Path
 from textwrap import dedent, indent
 from functools import reduce
@@ -8,7 +9,9 @@ from typing import List
 Parameter = namedtuple(
     "Parameter", ["type", "name", "nullable"], defaults=["", "", False]
 )
-Token = namedtuple("Token", ["name", "params"])
+# mutable fields set after construction, e.g. by the resolver; left out of equals and hashCode
+Field = namedtuple("Field", ["type", "name", "initial"])
+Token = namedtuple("Token", ["name", "params", "fields"], defaults=[()])
 
 PRIMITIVES = (
     "int",
@@ -16,6 +19,10 @@ PRIMITIVES = (
 )
 
 
+def kind_name(token):
+    return re.sub(r"(?<!^)(?=[A-Z])", "_", token.name).upper()
+
+
 def has_nullable(token):
     return any(map(lambda param: param.nullable, token.params))
 
@@ -36,9 +43,17 @@ def create_class(token: Parameter, access_level: str, class_name: str) -> str:
 
     def create_variables():
         return "\n".join(
-            map(
-                lambda vara: f"{access_level} final {'@Nullable ' if vara.nullable else ''}{vara.type} {vara.name};",
-                token.params,
+            list(
+                map(
+                    lambda vara: f"{access_level} final {'@Nullable ' if vara.nullable else ''}{vara.type} {vara.name};",
+                    token.params,
+                )
+            )
+            + list(
+                map(
+                    lambda field: f"{access_level} {field.type} {field.name} = {field.initial};",
+                    token.fields,
+                )
             )
         )
 
@@ -71,6 +86,7 @@ def create_class(token: Parameter, access_level: str, class_name: str) -> str:
         %s
 
           {access_level} {token.name}({create_params()}) {{
+            super({kind_name(token)});
         %s
           }}
 
@@ -116,6 +132,13 @@ def create_interface(token, class_name) -> str:
     ) + f"R visit{token.name}{class_name}({token.name} {class_name.lower()});"
 
 
+def create_kinds(tokens, access_level) -> str:
+    return "\n".join(
+        f"{access_level} static final int {kind_name(token)} = {i};"
+        for i, token in enumerate(tokens)
+    ) + f"\n{access_level} static final int KIND_COUNT = {len(tokens)};"
+
+
 def gen_ast(
     class_name: str,
     tokens: List[Token],
@@ -126,6 +149,7 @@ def gen_ast(
     access_level="public",
 ):
     # base class information
+    kinds = create_kinds(tokens, access_level)
     interfaces = "\n\n".join(map(lambda clz: create_interface(clz, class_name), tokens))
     import_str = "\n".join(map(lambda imp: f"import {imp};", imports))
     impl = "\n\n".join(
@@ -141,10 +165,19 @@ def gen_ast(
             package {package_name};
             %s
             {access_level} abstract class {class_name} {{
+            %s
+
               {access_level} interface {interface_name}<R> {{
             %s
               }}
 
+              /** Dense id of the subclass, for dispatching with a switch instead of a visitor. */
+              {access_level} final int kind;
+
+              protected {class_name}(int kind) {{
+                this.kind = kind;
+              }}
+
               {access_level} abstract <R> R accept(Visitor<R> visitor);
 
             %s
@@ -153,6 +186,7 @@ def gen_ast(
             )
             % (
                 ("\n" + import_str + "\n") if len(imports) > 0 else "",
+                indent(kinds, "  "),
                 indent(interfaces, "    "),
                 indent(impl, "  "),
             )
@@ -1,6 +1,14 @@
 #!/usr/bin/python
 from ast import Param
-from ast_gen import Token, Parameter, gen_ast
+from ast_gen import Field, Token, Parameter, gen_ast
+
+
+# scopes between a name and its declaration, or -1 for a global
+DEPTH = Field("int", "depth", "-1")
+# index of a local in its frame, or -1 for a top-level or global name kept by name
+SLOT = Field("int", "slot", "-1")
+# locals a call's frame holds, parameters included
+SLOTS = Field("int", "slots", "0")
 
 
 def gen_expr():
@@ -38,12 +46,25 @@ def gen_expr():
         Token("Grouping", [Parameter("Expr", "expression")]),
         Token(
             "Literal",
-            [Parameter("Object", "value", True), Parameter("Position", "pos")],
+            [Parameter("Object", "value", True), Parameter("int", "pos")],
         ),
         Token("Unary", [Parameter("Token", "operator"), Parameter("Expr", "right")]),
-        Token("This", [Parameter("Token", "keyword")]),
-        Token("Variable", [Parameter("Token", "name")]),
-        Token("Assign", [Parameter("Token", "name"), Parameter("Expr", "value")]),
+        Token("This", [Parameter("Token", "keyword")], [DEPTH, SLOT]),
+        Token("Variable", [Parameter("Token", "name")], [DEPTH, SLOT]),
+        Token(
+            "Assign",
+            [Parameter("Token", "name"), Parameter("Expr", "value")],
+            [DEPTH, SLOT],
+        ),
+        Token(
+            "CompoundAssign",
+            [
+                Parameter("Token", "name"),
+                Parameter("Token", "operator"),
+                Parameter("Expr", "value"),
+            ],
+            [DEPTH, SLOT],
+        ),
         Token(
             "Logical",
             [
@@ -55,10 +76,11 @@ def gen_expr():
         Token(
             "Fn",
             [
-                Parameter("Position", "pos"),
+                Parameter("int", "pos"),
                 Parameter("List<Token>", "parms"),
                 Parameter("List<Stmt>", "body"),
             ],
+            [SLOTS],
         ),
         Token("Get", [Parameter("Expr", "object"), Parameter("Token", "name")]),
         Token(
@@ -69,6 +91,15 @@ def gen_expr():
                 Parameter("Expr", "value"),
             ],
         ),
+        Token(
+            "CompoundSet",
+            [
+                Parameter("Expr", "object"),
+                Parameter("Token", "name"),
+                Parameter("Token", "operator"),
+                Parameter("Expr", "value"),
+            ],
+        ),
     ]
 
     gen_ast(class_name, tokens, import_list, out_path, package_name)
@@ -1,5 +1,11 @@
 #!/usr/bin/python
-from ast_gen import Token, Parameter, gen_ast
+from ast_gen import Field, Token, Parameter, gen_ast
+
+
+# index of the binding in its frame, or -1 at top level where names are kept by name
+SLOT = Field("int", "slot", "-1")
+# locals the scope's frame holds
+SLOTS = Field("int", "slots", "0")
 
 
 def gen_stmt():
@@ -19,8 +25,9 @@ def gen_stmt():
                 Parameter("boolean", "mutable"),
                 Parameter("boolean", "isStatic"),
             ],
+            [SLOT],
         ),
-        Token("Block", [Parameter("List<Stmt>", "stmts")]),
+        Token("Block", [Parameter("List<Stmt>", "stmts")], [SLOTS]),
         Token(
             "If",
             [
@@ -33,6 +40,17 @@ def gen_stmt():
             "Return", [Parameter("Token", "keyword"), Parameter("Expr", "value", True)]
         ),
         Token("While", [Parameter("Expr", "condition"), Parameter("Stmt", "body")]),
+        Token(
+            "For",
+            [
+                Parameter("Stmt", "initializer", True),
+                Parameter("Expr", "condition"),
+                Parameter("Expr", "increment", True),
+                Parameter("List<Stmt>", "body"),
+                Parameter("boolean", "bodyScoped"),
+            ],
+            [SLOTS, Field("int", "bodySlots", "0")],
+        ),
         Token("Break", [Parameter("Token", "keyword")]),
         Token("Continue", [Parameter("Token", "keyword")]),
         Token(
@@ -42,6 +60,7 @@ def gen_stmt():
                 Parameter("List<Stmt.Var>", "decls"),
                 Parameter("Expr.Variable", "superclass", True),
             ],
+            [SLOT],
         ),
     ]
 